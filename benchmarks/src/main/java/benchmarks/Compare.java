@@ -0,0 +1,169 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JSON results of the benchmarks, a baseline and a run after a change.
+ * <p>
+ * A benchmark regressed if its score got worse, or it allocates more per operation, by more than
+ * the threshold, {@value #DEFAULT_THRESHOLD}% unless the {@value #THRESHOLD_PROPERTY} system
+ * property says otherwise. Allocation is also allowed {@value #ALLOCATION_SLACK} byte of noise, so
+ * that code which allocated nothing must keep allocating nothing.
+ * <pre>
+ * java -cp benchmarks.jar benchmarks.Compare baseline.json jmh-result.json
+ * </pre>
+ */
+public final class Compare
+{
+    static final String THRESHOLD_PROPERTY = "threshold";
+
+    static final double DEFAULT_THRESHOLD = 10;
+
+    private static final double ALLOCATION_SLACK = 1;
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    // The mode in which a higher score is better
+    private static final String THROUGHPUT = "thrpt";
+
+    private Compare()
+    {
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("Usage: Compare <baseline.json> <result.json>");
+            System.exit(2);
+        }
+
+        if (!compare(new File(args[0]), new File(args[1]), threshold()))
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The threshold set by the {@value #THRESHOLD_PROPERTY} system property
+     *
+     * @return The threshold in percent
+     */
+    static double threshold()
+    {
+        String threshold = System.getProperty(THRESHOLD_PROPERTY);
+
+        return threshold == null ? DEFAULT_THRESHOLD : Double.parseDouble(threshold);
+    }
+
+    /**
+     * Prints how each benchmark of the baseline did in the result
+     *
+     * @param baseline  The results to compare with
+     * @param current   The results of the change
+     * @param threshold How much worse, in percent, a benchmark may get
+     * @return False if any benchmark regressed
+     * @throws IOException Error reading the results
+     */
+    static boolean compare(File baseline, File current, double threshold) throws IOException
+    {
+        Map<String, JsonNode> before = read(baseline);
+        Map<String, JsonNode> after = read(current);
+
+        boolean passed = true;
+
+        System.out.printf("%n%-70s %14s %14s %8s %12s %12s%n",
+                "Benchmark", "Baseline", "Now", "Change", "Baseline B/op", "Now B/op");
+
+        for (Map.Entry<String, JsonNode> entry : before.entrySet())
+        {
+            JsonNode now = after.get(entry.getKey());
+
+            if (now == null)
+            {
+                continue;
+            }
+
+            JsonNode then = entry.getValue();
+
+            double scoreThen = then.path("primaryMetric").path("score").asDouble();
+            double scoreNow = now.path("primaryMetric").path("score").asDouble();
+            double change = scoreThen == 0 ? 0 : 100 * (scoreNow - scoreThen) / scoreThen;
+
+            boolean higherIsBetter = THROUGHPUT.equals(now.path("mode").asText());
+            boolean slower = higherIsBetter ? change < -threshold : change > threshold;
+
+            double allocationThen = allocation(then);
+            double allocationNow = allocation(now);
+            boolean allocatesMore = allocationNow > allocationThen * (1 + threshold / 100) + ALLOCATION_SLACK;
+
+            System.out.printf("%-70s %14.3f %14.3f %+7.1f%% %12.1f %12.1f%s%n",
+                    entry.getKey(), scoreThen, scoreNow, change, allocationThen, allocationNow,
+                    slower || allocatesMore ? "  REGRESSED" : "");
+
+            passed &= !slower && !allocatesMore;
+        }
+
+        return passed;
+    }
+
+    /**
+     * Reads JSON results of the benchmarks
+     *
+     * @param results The results
+     * @return Each result by its benchmark and parameters
+     * @throws IOException Error reading the results
+     */
+    private static Map<String, JsonNode> read(File results) throws IOException
+    {
+        Map<String, JsonNode> byName = new LinkedHashMap<>();
+
+        for (JsonNode result : new ObjectMapper().readTree(results))
+        {
+            StringBuilder name = new StringBuilder(result.path("benchmark").asText());
+
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+
+            while (params.hasNext())
+            {
+                Map.Entry<String, JsonNode> param = params.next();
+                name.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+
+            byName.put(name.toString(), result);
+        }
+
+        return byName;
+    }
+
+    /**
+     * The bytes allocated per operation, as measured by the GC profiler
+     *
+     * @param result The result of a benchmark
+     * @return The bytes per operation, or 0 if allocation was not profiled
+     */
+    private static double allocation(JsonNode result)
+    {
+        Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+
+        while (metrics.hasNext())
+        {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+
+            // The profiler prefixes its metrics with a middle dot
+            if (metric.getKey().endsWith(ALLOCATION))
+            {
+                return metric.getValue().path("score").asDouble();
+            }
+        }
+
+        return 0;
+    }
+}
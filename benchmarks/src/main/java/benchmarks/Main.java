@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks with the JMH command line options, such as a pattern of the benchmarks to
+ * run, and by default
+ * <ul>
+ * <li>profiles allocation, reported as gc.alloc.rate.norm in bytes per operation</li>
+ * <li>writes the results as JSON into {@value #DEFAULT_RESULT}</li>
+ * </ul>
+ * To check a change, keep the results of a run before it and pass them as the baseline:
+ * <pre>
+ * java -jar benchmarks.jar -rff baseline.json
+ * java -Dbaseline=baseline.json -jar benchmarks.jar
+ * </pre>
+ * The second run is then compared with the baseline by {@link Compare}, and exits with 1 if
+ * anything got slower or allocates more.
+ */
+public final class Main
+{
+    static final String DEFAULT_RESULT = "jmh-result.json";
+
+    static final String BASELINE_PROPERTY = "baseline";
+
+    private Main()
+    {
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+                || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats())
+        {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+        if (!hasGcProfiler(commandLine))
+        {
+            options.addProfiler(GCProfiler.class);
+        }
+
+        if (!commandLine.getResultFormat().hasValue())
+        {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+
+        String result = commandLine.getResult().orElse(DEFAULT_RESULT);
+        options.result(result);
+
+        new Runner(options.build()).run();
+
+        String baseline = System.getProperty(BASELINE_PROPERTY);
+
+        if (baseline != null && !Compare.compare(new File(baseline), new File(result), Compare.threshold()))
+        {
+            System.exit(1);
+        }
+    }
+
+    private static boolean hasGcProfiler(CommandLineOptions commandLine)
+    {
+        for (ProfilerConfig profiler : commandLine.getProfilers())
+        {
+            if (profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
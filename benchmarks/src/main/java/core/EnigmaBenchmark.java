@@ -0,0 +1,55 @@
+package core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RSA encryption and decryption of text, by the size of the keys
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EnigmaBenchmark
+{
+    // Short enough for a single RSA block with the smallest keys
+    private static final String TEXT = "[{\"name\":\"accountNumber\",\"label\":\"Account Number\",\"value\":\"7234567891\"}]";
+
+    @Param({"1024", "2048", "4096"})
+    public int keySize;
+
+    private Enigma enigma;
+
+    private KeyPair keys;
+
+    private String encrypted;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        enigma = Enigma.getInstance();
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(LockSmith.CIPHER_ALGORITHM);
+        generator.initialize(keySize);
+        keys = generator.generateKeyPair();
+
+        encrypted = enigma.encryptText(TEXT, keys.getPrivate());
+    }
+
+    @Benchmark
+    public String encryptText() throws Exception
+    {
+        return enigma.encryptText(TEXT, keys.getPrivate());
+    }
+
+    @Benchmark
+    public String decryptText() throws Exception
+    {
+        return enigma.decryptText(encrypted, keys.getPublic());
+    }
+}
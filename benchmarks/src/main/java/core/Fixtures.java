@@ -0,0 +1,99 @@
+package core;
+
+import core.utils.MoneyUtils;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * What the benchmarks need in place before they run.
+ * <p>
+ * Like the service, the benchmarks keep their keys in keys/ and their coins in silo/ under the
+ * working directory, so run them from a scratch directory rather than from a deployment.
+ */
+public final class Fixtures
+{
+    // Far quicker to generate than the default size of the service, and what most deployments use
+    private static final int DEFAULT_KEY_SIZE = 2048;
+
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Creates the encryption and signing keys if they are missing, with the size given by the
+     * {@value LockSmith#KEY_SIZE_PROPERTY} system property, or 2048 bits
+     *
+     * @throws GeneralSecurityException Error generating the keys
+     * @throws IOException              Error writing the keys
+     */
+    public static void provisionKeys() throws GeneralSecurityException, IOException
+    {
+        LockSmith.provision(LockSmith.CIPHER_ALGORITHM,
+                Integer.getInteger(LockSmith.KEY_SIZE_PROPERTY, DEFAULT_KEY_SIZE), false);
+    }
+
+    /**
+     * Opens the vault with a given backend and otherwise the default settings
+     *
+     * @param backend "sqlite" or "log"
+     * @throws SQLException Error opening the database
+     * @throws IOException  Error opening the log
+     */
+    public static void openVault(String backend) throws SQLException, IOException
+    {
+        Map<String, String> settings = new HashMap<>();
+        settings.put(Vault.BACKEND_PROPERTY, backend);
+
+        Vault.open(name -> settings.containsKey(name) ? settings.get(name) : System.getProperty(name));
+    }
+
+    /**
+     * Closes the vault, writing out any queued coins
+     */
+    public static void closeVault()
+    {
+        Vault.close();
+    }
+
+    /**
+     * Valid input values of a Kenyan coin
+     *
+     * @param accountNumber The account number
+     * @return The values by field name
+     */
+    public static HashMap<String, String> kenyaValues(String accountNumber)
+    {
+        HashMap<String, String> values = new HashMap<>();
+        values.put("accountHolderName", "Arthur Buliva");
+        values.put("accountNumber", accountNumber);
+        values.put("accountHolderAddress", "Herengracht 597, 1069RE, Amsterdam");
+        values.put("taxCertificate", "A017723456X");
+        values.put("BIC", "ABNANL2A");
+
+        return values;
+    }
+
+    /**
+     * A random ten digit account number that passes validation, so that every coin minted with it is new
+     *
+     * @param random The source of the digits
+     * @return The account number
+     */
+    public static String accountNumber(Random random)
+    {
+        String accountNumber;
+
+        do
+        {
+            accountNumber = Long.toString(1_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 9_000_000_000L);
+        }
+        while (MoneyUtils.isTrivial(accountNumber));
+
+        return accountNumber;
+    }
+}
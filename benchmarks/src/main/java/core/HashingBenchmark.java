@@ -0,0 +1,78 @@
+package core;
+
+import core.utils.MoneyUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing coin ids and checking values for triviality
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HashingBenchmark
+{
+    private static final String TEXT = "Kenya.[{\"name\":\"accountNumber\",\"label\":\"Account Number\"," +
+            "\"validity\":true,\"value\":\"7234567891\"}]";
+
+    private final Field[] fields = {
+            new Field("accountNumber", "Account Number"),
+            new Field("taxCertificate", "KRA PIN Certificate"),
+            new Field("accountHolderName", "Account Holder Name")
+    };
+
+    private final String[] inputs = {"7234567891", "A017723456X", "Arthur Buliva"};
+
+    private final boolean[] validity = {true, true, true};
+
+    private HashingService legacy;
+
+    private HashingService direct;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        legacy = new HashingService(HashingService.DEFAULT_ALGORITHM, HashingService.LEGACY);
+        direct = new HashingService(HashingService.DEFAULT_ALGORITHM, HashingService.DIRECT);
+    }
+
+    @State(Scope.Thread)
+    public static class Value
+    {
+        // A value of each kind, trivial or not, and one that is ruled out on its first characters
+        @Param({"Arthur Buliva", "7234567891", "1234567890", "qwerty", "n/a", "#"})
+        public String value;
+    }
+
+    /*
+     * Checking a value allocates nothing, so gc.alloc.rate.norm should stay at 0 B/op:
+     * java -jar benchmarks.jar HashingBenchmark.isTrivial -prof gc
+     */
+    @Benchmark
+    public boolean isTrivial(Value state)
+    {
+        return MoneyUtils.isTrivial(state.value);
+    }
+
+    @Benchmark
+    public String sha256()
+    {
+        return MoneyUtils.sha256(TEXT);
+    }
+
+    @Benchmark
+    public String legacyCoinId()
+    {
+        return legacy.coinId("Kenya", fields, inputs, validity);
+    }
+
+    @Benchmark
+    public String directCoinId()
+    {
+        return direct.coinId("Kenya", fields, inputs, validity);
+    }
+}
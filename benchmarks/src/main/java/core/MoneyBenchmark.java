@@ -0,0 +1,85 @@
+package core;
+
+import currency.Kenya;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a coin from its input values and validating them, which every request to the mint does
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MoneyBenchmark
+{
+    private HashMap<String, String> values;
+
+    private Money money;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        values = Fixtures.kenyaValues("7234567891");
+        money = new Kenya(values);
+    }
+
+    /**
+     * The constructor is handed a copy, as the controller hands it the parsed request
+     */
+    @Benchmark
+    public Money construct() throws Exception
+    {
+        return new Kenya(new HashMap<>(values));
+    }
+
+    @Benchmark
+    public List<FieldResult> validate() throws Exception
+    {
+        return money.validate();
+    }
+
+    @Benchmark
+    public ArrayList<HashMap<String, Object>> validateValues() throws Exception
+    {
+        return money.validateValues();
+    }
+
+    /**
+     * Each validator of Kenya on its own, with a value it accepts
+     */
+    @State(Scope.Thread)
+    public static class KenyaValidator
+    {
+        @Param({"accountNumber", "accountHolderName", "taxCertificate", "BIC"})
+        public String fieldName;
+
+        Field field;
+        String inputValue;
+        FieldValidator validator;
+
+        @Setup
+        public void setUp() throws Exception
+        {
+            HashMap<String, String> values = Fixtures.kenyaValues("7234567891");
+            Map<String, FieldValidator> validators = ((Money) new Kenya(values)).validators();
+
+            field = new Field(fieldName, fieldName);
+            inputValue = values.get(fieldName);
+            validator = validators.get(fieldName);
+        }
+    }
+
+    @Benchmark
+    public FieldResult kenyaValidator(KenyaValidator state)
+    {
+        return state.validator.validate(state.field, state.inputValue);
+    }
+}
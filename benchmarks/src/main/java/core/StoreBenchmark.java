@@ -0,0 +1,97 @@
+package core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and reading stored coins, by backend. A save waits for its batch to be committed, so
+ * with a single thread it also measures the commit window; run with -t to see batching at work
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StoreBenchmark
+{
+    // About the size of a sealed coin
+    private static final int PAYLOAD_SIZE = 1900;
+
+    private static final int STORED_COINS = 4096;
+
+    @Param({"sqlite", "log"})
+    public String backend;
+
+    private byte[] payload;
+
+    private String[] stored;
+
+    // Unique per fork, as the vault outlives it
+    private String runId;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        Fixtures.openVault(backend);
+
+        Random random = new Random();
+        runId = Long.toHexString(random.nextLong());
+
+        payload = new byte[PAYLOAD_SIZE];
+        random.nextBytes(payload);
+
+        Store store = new Store();
+        stored = new String[STORED_COINS];
+
+        for (int i = 0; i < STORED_COINS; i++)
+        {
+            stored[i] = String.format("stored-%s-%d", runId, i);
+            store.saveCoinAsync(stored[i], "Kenya", payload);
+        }
+
+        // Committed once the last one is
+        store.saveCoin(String.format("stored-%s-last", runId), "Kenya", payload);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.closeVault();
+    }
+
+    @State(Scope.Thread)
+    public static class Caller
+    {
+        private static int threads;
+
+        Store store;
+        String prefix;
+        int sequence;
+
+        @Setup
+        public void setUp(StoreBenchmark benchmark)
+        {
+            store = new Store();
+
+            synchronized (Caller.class)
+            {
+                prefix = String.format("saved-%s-%d-", benchmark.runId, threads++);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean saveCoin(Caller caller)
+    {
+        return caller.store.saveCoin(caller.prefix + caller.sequence++, "Kenya", payload);
+    }
+
+    @Benchmark
+    public byte[] displayCoin(Caller caller)
+    {
+        return caller.store.displayCoin(stored[caller.sequence++ & (STORED_COINS - 1)]);
+    }
+}
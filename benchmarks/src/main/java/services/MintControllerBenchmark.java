@@ -0,0 +1,74 @@
+package services;
+
+import core.CurrencyRegistry;
+import core.Fixtures;
+import core.Json;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request to /save from its body to its response: parsing, validation, hashing, encryption
+ * and storage. Every request mints a new coin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class MintControllerBenchmark
+{
+    @Param({"sqlite", "log"})
+    public String backend;
+
+    private MintController controller;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        Fixtures.provisionKeys();
+        Fixtures.openVault(backend);
+        CurrencyRegistry.load();
+
+        controller = new MintController();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Fixtures.closeVault();
+    }
+
+    @State(Scope.Thread)
+    public static class Caller
+    {
+        Random random = new Random();
+    }
+
+    @Benchmark
+    public MockHttpServletResponse mintCoin(Caller caller) throws Exception
+    {
+        HashMap<String, String> values = Fixtures.kenyaValues(Fixtures.accountNumber(caller.random));
+        values.put("country", "Kenya");
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/save");
+        request.setContentType("application/json");
+        request.setContent(Json.write(values).getBytes("UTF-8"));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        controller.mintCoin(request, null, response);
+
+        if (response.getStatus() != 200 || response.getContentAsByteArray().length == 0)
+        {
+            throw new IllegalStateException(String.format("Minting failed with %d", response.getStatus()));
+        }
+
+        return response;
+    }
+}
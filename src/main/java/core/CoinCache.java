@@ -0,0 +1,207 @@
+package core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decrypted coins by coin id, least recently used first.
+ * <p>
+ * Coins never change once minted, so a decrypted coin can be served again without going to
+ * the vault or the keys, until it is revoked. The cache is bounded by the approximate memory
+ * taken by the coins, {@value #DEFAULT_MAX_BYTES} bytes unless the {@value #MAX_BYTES_PROPERTY}
+ * system property says otherwise. Setting it to 0 turns the cache off.
+ */
+final class CoinCache
+{
+    static final String MAX_BYTES_PROPERTY = "coins.cache.bytes";
+
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024L * 1024L;
+
+    // Rough bookkeeping cost of an entry besides its strings
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final CoinCache SHARED = new CoinCache(Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+
+    private final long maxBytes;
+
+    // Guarded by itself
+    private final LinkedHashMap<String, String> coins = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private long bytes;
+
+    // Bumped on every invalidation, so that a coin read before it was revoked is not cached after
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Instantiate a cache
+     *
+     * @param maxBytes The approximate memory the coins may take
+     */
+    CoinCache(long maxBytes)
+    {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * The cache shared by the application
+     *
+     * @return The shared cache
+     */
+    static CoinCache shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Looks up a coin
+     *
+     * @param coinId The id of the coin
+     * @return The decrypted coin, or null if it is not cached
+     */
+    String get(String coinId)
+    {
+        String coin;
+
+        synchronized (coins)
+        {
+            coin = coins.get(coinId);
+        }
+
+        if (coin == null)
+        {
+            misses.increment();
+        }
+        else
+        {
+            hits.increment();
+        }
+
+        return coin;
+    }
+
+    /**
+     * The current epoch, to be taken before reading a coin from the vault
+     *
+     * @return The epoch
+     */
+    long epoch()
+    {
+        return epoch.get();
+    }
+
+    /**
+     * Caches a coin, unless a coin was invalidated since it was read
+     *
+     * @param coinId The id of the coin
+     * @param coin   The decrypted coin
+     * @param readAt The {@link #epoch()} taken before the coin was read
+     */
+    void put(String coinId, String coin, long readAt)
+    {
+        long weight = weigh(coinId, coin);
+
+        if (weight > maxBytes)
+        {
+            return;
+        }
+
+        synchronized (coins)
+        {
+            if (epoch.get() != readAt)
+            {
+                return;
+            }
+
+            String previous = coins.put(coinId, coin);
+
+            if (previous != null)
+            {
+                bytes -= weigh(coinId, previous);
+            }
+
+            bytes += weight;
+
+            Iterator<Map.Entry<String, String>> eldest = coins.entrySet().iterator();
+
+            while (bytes > maxBytes && eldest.hasNext())
+            {
+                Map.Entry<String, String> entry = eldest.next();
+
+                bytes -= weigh(entry.getKey(), entry.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drops a coin, for instance because it has been revoked
+     *
+     * @param coinId The id of the coin
+     */
+    void invalidate(String coinId)
+    {
+        synchronized (coins)
+        {
+            epoch.incrementAndGet();
+
+            String previous = coins.remove(coinId);
+
+            if (previous != null)
+            {
+                bytes -= weigh(coinId, previous);
+            }
+        }
+
+        invalidations.increment();
+    }
+
+    /**
+     * The cache metrics
+     *
+     * @return The metrics by name
+     */
+    Map<String, Number> stats()
+    {
+        TreeMap<String, Number> stats = new TreeMap<>();
+
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("maxBytes", maxBytes);
+
+        synchronized (coins)
+        {
+            stats.put("size", coins.size());
+            stats.put("bytes", bytes);
+        }
+
+        return stats;
+    }
+
+    /**
+     * The approximate memory taken by a cached coin
+     *
+     * @param coinId The id of the coin
+     * @param coin   The decrypted coin
+     * @return The weight in bytes
+     */
+    private static long weigh(String coinId, String coin)
+    {
+        return ENTRY_OVERHEAD + 2L * (coinId.length() + coin.length());
+    }
+}
@@ -0,0 +1,323 @@
+package core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a coin, which is what gets encrypted and stored.
+ * <p>
+ * A coin is a list of objects, one per field, whose keys, such as "label", "field" and
+ * "inputValue", are the same for every field of every coin. Here the well known keys are
+ * written as a one byte tag instead of their name, strings as a varint length followed by
+ * their UTF-8 bytes, and there are no quotes, colons or commas. A coin is laid out as
+ * <pre>
+ * [version: 1 byte][object count: varint] then for each object
+ * [key count: varint] then for each key
+ * [tag: varint][name, only if the tag is 0][kind: 1 byte][value]
+ * </pre>
+ * where a value is a string, nothing for false and true, or a nested object. Keys are kept in
+ * order, so {@link #toJson(byte[])} gives back exactly what {@link Json#write(Object)} gave for
+ * the coin. Null values are left out, as they are from the JSON.
+ * <p>
+ * The coin decodes on its own, without the definition of its currency, so coins stay readable
+ * however the fields of their currency change. Payloads minted before this form was introduced
+ * are JSON, which never starts with {@value #VERSION}.
+ */
+final class CoinCodec
+{
+    static final byte VERSION = 1;
+
+    /*
+     * The well known keys, tagged by their position counting from 1.
+     * DO NOT reorder or remove keys, only add them at the end
+     */
+    private static final String[] KEYS = {
+            "name", "label", "value", "field", "inputValue", "errorMessage", "coinId", "warningMessage", "validity"
+    };
+
+    private static final HashMap<String, Integer> TAGS = new HashMap<>();
+
+    static
+    {
+        for (int i = 0; i < KEYS.length; i++)
+        {
+            TAGS.put(KEYS[i], i + 1);
+        }
+    }
+
+    // A key spelled out instead of tagged
+    private static final int NAMED = 0;
+
+    private static final byte STRING = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte OBJECT = 3;
+
+    private CoinCodec()
+    {
+    }
+
+    /**
+     * Encodes a coin
+     *
+     * @param objects The fields of the coin, each an object of strings, booleans and nested objects
+     * @return The encoded coin
+     * @throws IllegalArgumentException A value is of some other type
+     */
+    static byte[] encode(List<? extends Map<String, ?>> objects)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(32 * objects.size());
+
+        output.write(VERSION);
+        writeVarint(output, objects.size());
+
+        for (Map<String, ?> object : objects)
+        {
+            writeObject(output, object);
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Checks whether a decrypted payload is in this form rather than JSON
+     *
+     * @param payload The decrypted payload
+     * @return True if the payload was encoded by {@link #encode(List)}
+     */
+    static boolean isEncoded(byte[] payload)
+    {
+        return payload.length > 0 && payload[0] == VERSION;
+    }
+
+    /**
+     * Decodes a coin into its JSON
+     *
+     * @param encoded The encoded coin
+     * @return The coin as compact JSON
+     * @throws IllegalArgumentException The coin is malformed or of an unknown version
+     */
+    static String toJson(byte[] encoded)
+    {
+        ByteBuffer input = ByteBuffer.wrap(encoded);
+        StringWriter json = new StringWriter(encoded.length * 2);
+
+        try (JsonGenerator generator = Json.factory().createGenerator(json))
+        {
+            byte version = input.get();
+
+            if (version != VERSION)
+            {
+                throw new IllegalArgumentException(String.format("Unsupported coin version %d", version));
+            }
+
+            int objects = readVarint(input);
+
+            generator.writeStartArray();
+
+            for (int i = 0; i < objects; i++)
+            {
+                readObject(input, generator);
+            }
+
+            generator.writeEndArray();
+        }
+        catch (BufferUnderflowException ex)
+        {
+            throw new IllegalArgumentException("Truncated coin", ex);
+        }
+        catch (IOException ex)
+        {
+            // A StringWriter does not throw
+            throw new IllegalStateException(ex);
+        }
+
+        if (input.hasRemaining())
+        {
+            throw new IllegalArgumentException("Trailing bytes after the coin");
+        }
+
+        return json.toString();
+    }
+
+    private static void writeObject(ByteArrayOutputStream output, Map<String, ?> object)
+    {
+        int keys = 0;
+
+        for (Object value : object.values())
+        {
+            if (value != null)
+            {
+                keys++;
+            }
+        }
+
+        writeVarint(output, keys);
+
+        for (Map.Entry<String, ?> entry : object.entrySet())
+        {
+            Object value = entry.getValue();
+
+            if (value == null)
+            {
+                continue;
+            }
+
+            Integer tag = TAGS.get(entry.getKey());
+
+            if (tag == null)
+            {
+                writeVarint(output, NAMED);
+                writeString(output, entry.getKey());
+            }
+            else
+            {
+                writeVarint(output, tag);
+            }
+
+            if (value instanceof String)
+            {
+                output.write(STRING);
+                writeString(output, (String) value);
+            }
+            else if (value instanceof Boolean)
+            {
+                output.write((Boolean) value ? TRUE : FALSE);
+            }
+            else if (value instanceof Map)
+            {
+                output.write(OBJECT);
+
+                @SuppressWarnings("unchecked")
+                Map<String, ?> nested = (Map<String, ?>) value;
+
+                writeObject(output, nested);
+            }
+            else
+            {
+                throw new IllegalArgumentException(
+                        String.format("Cannot encode %s, a %s", entry.getKey(), value.getClass().getName()));
+            }
+        }
+    }
+
+    private static void readObject(ByteBuffer input, JsonGenerator generator) throws IOException
+    {
+        int keys = readVarint(input);
+
+        generator.writeStartObject();
+
+        for (int i = 0; i < keys; i++)
+        {
+            int tag = readVarint(input);
+
+            if (tag == NAMED)
+            {
+                generator.writeFieldName(readString(input));
+            }
+            else if (tag <= KEYS.length)
+            {
+                generator.writeFieldName(KEYS[tag - 1]);
+            }
+            else
+            {
+                throw new IllegalArgumentException(String.format("Unknown key tag %d", tag));
+            }
+
+            byte kind = input.get();
+
+            switch (kind)
+            {
+                case STRING:
+                    generator.writeString(readString(input));
+                    break;
+                case FALSE:
+                    generator.writeBoolean(false);
+                    break;
+                case TRUE:
+                    generator.writeBoolean(true);
+                    break;
+                case OBJECT:
+                    readObject(input, generator);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unknown value kind %d", kind));
+            }
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static void writeString(ByteArrayOutputStream output, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarint(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer input)
+    {
+        int length = readVarint(input);
+
+        if (length > input.remaining())
+        {
+            throw new IllegalArgumentException("Truncated coin");
+        }
+
+        String value = new String(input.array(), input.position(), length, StandardCharsets.UTF_8);
+        input.position(input.position() + length);
+
+        return value;
+    }
+
+    /**
+     * Writes a non-negative number seven bits at a time, lowest first, with the top bit of each
+     * byte set if more follow
+     *
+     * @param output Where to write the number
+     * @param value  The number
+     */
+    private static void writeVarint(ByteArrayOutputStream output, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        output.write(value);
+    }
+
+    private static int readVarint(ByteBuffer input)
+    {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            byte b = input.get();
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0)
+            {
+                if (value < 0)
+                {
+                    break;
+                }
+
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed length in coin");
+    }
+}
@@ -1,55 +1,98 @@
 package core;
 
-import com.google.gson.Gson;
-
-import javax.crypto.BadPaddingException;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import java.io.IOException;
-import java.security.InvalidKeyException;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.security.spec.InvalidKeySpecException;
-import java.util.ArrayList;
+import java.util.Map;
 
 public class CoinDisplay
 {
+    // What is shown when there is no such coin
+    private static final String NO_COIN = "[]";
+
     private Enigma enigma;
 
     public CoinDisplay() throws
             NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException
     {
         /*
-         Initialize the encryption/decryption class
+         Use the encryption/decryption class shared by the application
          */
-        enigma = new Enigma();
+        enigma = Enigma.getInstance();
     }
 
     /**
      * Retrieves a coin from the store and displays its value
+     * <p>
+     * Coins that were minted or shown recently are served from the {@link CoinCache}
      *
      * @param coinId The id of the coin to be retrieved
      * @return A decrypted string of the values
      */
     public String showCoin(String coinId)
     {
-        Store store = new Store();
-
         if (coinId.isEmpty())
         {
-            return new Gson().toJson(new ArrayList());
+            return NO_COIN;
+        }
+
+        String coin = findCoin(coinId);
+
+        return coin == null ? NO_COIN : coin;
+    }
+
+    /**
+     * Retrieves a valid coin from the cache or the store
+     *
+     * @param coinId The id of the coin to be retrieved
+     * @return The decrypted coin, or null if there is no valid coin with that id or it could not be read
+     */
+    String findCoin(String coinId)
+    {
+        CoinCache cache = CoinCache.shared();
+
+        String coin = cache.get(coinId);
+
+        if (coin != null)
+        {
+            return coin;
+        }
+
+        long readAt = cache.epoch();
+
+        byte[] stored = new Store().displayCoin(coinId);
+
+        if (stored == null || stored.length == 0)
+        {
+            return null;
         }
 
         try
         {
-            return enigma.decryptText((String) store.displayCoin(coinId), enigma.getPublic());
+            // Reads signed coins, envelopes and legacy RSA payloads alike
+            coin = enigma.reveal(coinId, stored);
         }
-        catch (NullPointerException | InvalidKeyException | IllegalBlockSizeException | BadPaddingException
-                | IOException | NoSuchAlgorithmException | InvalidKeySpecException e)
+        catch (IllegalArgumentException | GeneralSecurityException | IOException e)
         {
             e.printStackTrace();
-            
-            return new Gson().toJson(new ArrayList());
+
+            return null;
         }
+
+        cache.put(coinId, coin, readAt);
+
+        return coin;
+    }
+
+    /**
+     * The hit and miss metrics of the cache of decrypted coins
+     *
+     * @return The metrics by name
+     */
+    public Map<String, Number> cacheStats()
+    {
+        return CoinCache.shared().stats();
     }
 }
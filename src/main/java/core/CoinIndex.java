@@ -0,0 +1,125 @@
+package core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter over the serial numbers of the coins in the vault.
+ * <p>
+ * It answers whether a coin might already exist without going to the vault. A "no" is
+ * certain, so minting a new coin costs nothing extra; a "maybe" is wrong about
+ * {@value #FALSE_POSITIVE_RATE} of the time until more coins than the filter was sized
+ * for have been added, and has to be confirmed against the vault.
+ */
+final class CoinIndex
+{
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Sizes a filter
+     *
+     * @param expectedCoins The number of coins the filter should hold at the intended false positive rate
+     */
+    CoinIndex(long expectedCoins)
+    {
+        long coins = Math.max(1024, expectedCoins);
+        double ln2 = Math.log(2);
+
+        long words = (long) Math.ceil(-coins * Math.log(FALSE_POSITIVE_RATE) / (ln2 * ln2) / 64);
+
+        this.bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE - 8, words));
+        this.bitCount = 64L * bits.length();
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / coins * ln2));
+    }
+
+    /**
+     * Records that a coin exists
+     *
+     * @param serialNumber The serial number of the coin
+     */
+    void add(String serialNumber)
+    {
+        long hash = hash(serialNumber);
+        long step = mix(hash) | 1;
+
+        for (int i = 0; i < hashCount; i++)
+        {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+
+            while (((current = bits.get(word)) & mask) == 0)
+            {
+                if (bits.compareAndSet(word, current, current | mask))
+                {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether a coin might exist
+     *
+     * @param serialNumber The serial number of the coin
+     * @return False if the coin certainly does not exist
+     */
+    boolean mightContain(String serialNumber)
+    {
+        long hash = hash(serialNumber);
+        long step = mix(hash) | 1;
+
+        for (int i = 0; i < hashCount; i++)
+        {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the serial number
+     *
+     * @param serialNumber The serial number of the coin
+     * @return The hash
+     */
+    private static long hash(String serialNumber)
+    {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < serialNumber.length(); i++)
+        {
+            hash ^= serialNumber.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return mix(hash);
+    }
+
+    /**
+     * Spreads the bits of a hash, to derive a second independent-looking hash
+     *
+     * @param hash The hash
+     * @return The mixed hash
+     */
+    private static long mix(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
@@ -0,0 +1,133 @@
+package core;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ * Auditing of the coins in the vault: revoking them, and listing them by country, by the day
+ * they were minted or by whether they were revoked.
+ * <p>
+ * Listings are paged by key rather than by offset. Each page is handed to the caller one coin at
+ * a time as it is read, and ends with a cursor from which to read the next page, so going through
+ * millions of coins never scans the rows already seen and never holds more than one coin in memory.
+ * Nothing is decrypted.
+ */
+public final class CoinLedger
+{
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private CoinLedger()
+    {
+    }
+
+    /**
+     * Marks a coin as no longer valid, so that it can no longer be displayed or minted again
+     *
+     * @param coinId The id of the coin
+     * @return True if the coin exists, false otherwise
+     */
+    public static boolean revoke(String coinId)
+    {
+        return new Store().revokeCoin(coinId);
+    }
+
+    /**
+     * Lists the coins of a country, by coin id
+     *
+     * @param country  The country eg "Kenya"
+     * @param after    The cursor returned with the previous page, or null for the first page
+     * @param pageSize The most coins to list, up to {@value #MAX_PAGE_SIZE}
+     * @param coins    Receives the coins as they are read
+     * @return The cursor of the next page, or null if this was the last page
+     * @throws IOException Error reading the vault
+     */
+    public static String listByCountry(String country, String after, int pageSize, Consumer<CoinRecord> coins)
+            throws IOException
+    {
+        return new Store().listByCountry(country, after == null ? "" : after, pageSize(pageSize), coins);
+    }
+
+    /**
+     * Lists the coins minted between two days, by day and then by coin id
+     *
+     * @param from     The first day, as yyyy-MM-dd
+     * @param to       The last day, as yyyy-MM-dd
+     * @param after    The cursor returned with the previous page, or null for the first page
+     * @param pageSize The most coins to list, up to {@value #MAX_PAGE_SIZE}
+     * @param coins    Receives the coins as they are read
+     * @return The cursor of the next page, or null if this was the last page
+     * @throws IllegalArgumentException A day or the cursor is malformed
+     * @throws IOException              Error reading the vault
+     */
+    public static String listByValidFrom(String from, String to, String after, int pageSize, Consumer<CoinRecord> coins)
+            throws IOException
+    {
+        // Dates are stored as text, so they must be in the same shape to compare correctly
+        String first = day(from);
+        String last = day(to);
+
+        String afterDay = "";
+        String afterCoin = "";
+
+        if (after != null)
+        {
+            int separator = after.indexOf(',');
+
+            if (separator < 0)
+            {
+                throw new IllegalArgumentException(String.format("%s is not a valid cursor", after));
+            }
+
+            afterDay = day(after.substring(0, separator));
+            afterCoin = after.substring(separator + 1);
+        }
+
+        return new Store().listByValidFrom(first, last, afterDay, afterCoin, pageSize(pageSize), coins);
+    }
+
+    /**
+     * Lists the revoked coins, by coin id
+     *
+     * @param after    The cursor returned with the previous page, or null for the first page
+     * @param pageSize The most coins to list, up to {@value #MAX_PAGE_SIZE}
+     * @param coins    Receives the coins as they are read
+     * @return The cursor of the next page, or null if this was the last page
+     * @throws IOException Error reading the vault
+     */
+    public static String listRevoked(String after, int pageSize, Consumer<CoinRecord> coins) throws IOException
+    {
+        return new Store().listRevoked(after == null ? "" : after, pageSize(pageSize), coins);
+    }
+
+    /**
+     * Keeps a page size within bounds
+     *
+     * @param pageSize The requested page size, 0 or less for the default
+     * @return The page size to use
+     */
+    private static int pageSize(int pageSize)
+    {
+        return pageSize <= 0 ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Checks a day
+     *
+     * @param day The day, as yyyy-MM-dd
+     * @return The day
+     * @throws IllegalArgumentException The day is missing or malformed
+     */
+    private static String day(String day)
+    {
+        try
+        {
+            return LocalDate.parse(day).toString();
+        }
+        catch (RuntimeException ex)
+        {
+            throw new IllegalArgumentException(String.format("%s is not a valid date, expected yyyy-MM-dd", day), ex);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package core;
+
+/**
+ * What the vault knows about a coin without decrypting it
+ */
+public final class CoinRecord
+{
+    private final String coinId;
+    private final String country;
+    private final String validFrom;
+    private final boolean valid;
+
+    /**
+     * Instantiate a record
+     *
+     * @param coinId    The id of the coin
+     * @param country   The country of the coin eg "Kenya"
+     * @param validFrom The day the coin was minted, as yyyy-MM-dd
+     * @param valid     False if the coin has been revoked
+     */
+    CoinRecord(String coinId, String country, String validFrom, boolean valid)
+    {
+        this.coinId = coinId;
+        this.country = country;
+        this.validFrom = validFrom;
+        this.valid = valid;
+    }
+
+    /**
+     * The id of the coin
+     *
+     * @return The coin id
+     */
+    public String getCoinId()
+    {
+        return coinId;
+    }
+
+    /**
+     * The country of the coin
+     *
+     * @return The country eg "Kenya"
+     */
+    public String getCountry()
+    {
+        return country;
+    }
+
+    /**
+     * The day the coin was minted
+     *
+     * @return The day, as yyyy-MM-dd
+     */
+    public String getValidFrom()
+    {
+        return validFrom;
+    }
+
+    /**
+     * Whether the coin may still be displayed
+     *
+     * @return False if the coin has been revoked
+     */
+    public boolean isValid()
+    {
+        return valid;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s (%s, %s%s)", coinId, country, validFrom, valid ? "" : ", revoked");
+    }
+}
@@ -0,0 +1,101 @@
+package core;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Where the coins are kept.
+ * <p>
+ * Coins are written once and then read by serial number, revoked or scanned for audits.
+ * Saving a coin that is already stored replaces its value but keeps the day it was first
+ * minted and whether it was revoked. The backend is picked when the {@link Vault} is opened.
+ */
+interface CoinVault
+{
+    /**
+     * Queues a coin for storage. Coins queued around the same time may be committed together
+     *
+     * @param serialNumber The key with which to store the coin
+     * @param country      The country associated with the coin
+     * @param value        The encrypted coin
+     * @return A future completed with true once the coin is committed, false if it could not be saved
+     */
+    CompletableFuture<Boolean> save(String serialNumber, String country, byte[] value);
+
+    /**
+     * Checks whether a coin might be stored, without any I/O
+     *
+     * @param serialNumber The id of the coin
+     * @return False if the coin is certainly not stored, true if it might be
+     */
+    boolean mightContain(String serialNumber);
+
+    /**
+     * Reads a valid coin
+     *
+     * @param serialNumber The id of the coin
+     * @return The encrypted coin, or null if there is no valid coin with that id or it could not be read
+     */
+    byte[] get(String serialNumber);
+
+    /**
+     * Checks whether a coin has been revoked
+     *
+     * @param serialNumber The id of the coin
+     * @return True if the coin is stored and has been revoked, false otherwise
+     */
+    boolean isRevoked(String serialNumber);
+
+    /**
+     * Marks a coin as no longer valid
+     *
+     * @param serialNumber The id of the coin
+     * @return True if the coin exists, false otherwise
+     */
+    boolean revoke(String serialNumber);
+
+    /**
+     * Scans a page of the coins of a country, by serial number
+     *
+     * @param country  The country of the coins
+     * @param after    The serial number after which to start, empty for the first page
+     * @param pageSize The most coins to scan
+     * @param coins    Receives the coins as they are read
+     * @return The last coin if the page is full, so that there may be more, or null otherwise
+     * @throws IOException Error reading the coins
+     */
+    CoinRecord scanByCountry(String country, String after, int pageSize, Consumer<CoinRecord> coins)
+            throws IOException;
+
+    /**
+     * Scans a page of the coins minted between two days, by day and then by serial number
+     *
+     * @param from      The first day, as yyyy-MM-dd
+     * @param to        The last day, as yyyy-MM-dd
+     * @param afterDay  The day of the coin after which to start, empty for the first page
+     * @param afterCoin The serial number of the coin after which to start, empty for the first page
+     * @param pageSize  The most coins to scan
+     * @param coins     Receives the coins as they are read
+     * @return The last coin if the page is full, so that there may be more, or null otherwise
+     * @throws IOException Error reading the coins
+     */
+    CoinRecord scanByValidFrom(String from, String to, String afterDay, String afterCoin, int pageSize,
+                               Consumer<CoinRecord> coins) throws IOException;
+
+    /**
+     * Scans a page of the revoked coins, by serial number
+     *
+     * @param after    The serial number after which to start, empty for the first page
+     * @param pageSize The most coins to scan
+     * @param coins    Receives the coins as they are read
+     * @return The last coin if the page is full, so that there may be more, or null otherwise
+     * @throws IOException Error reading the coins
+     */
+    CoinRecord scanRevoked(String after, int pageSize, Consumer<CoinRecord> coins) throws IOException;
+
+    /**
+     * Writes out any queued coins and releases the files or connections of the vault
+     */
+    void close();
+}
@@ -0,0 +1,274 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind pipeline for minted coins.
+ * <p>
+ * Coins saved from any number of threads are queued and written by a single
+ * writer thread. The writer collects whatever arrives within a short window
+ * (or until the batch is full) and hands it to the vault's {@link Committer} as
+ * one unit, so that the vault is synced once per batch instead of once per coin.
+ * A caller's future is only completed once the batch holding its coin has been committed.
+ */
+final class CoinWriter
+{
+    // Upper bound on coins waiting to be written before callers are made to wait
+    private static final int QUEUE_CAPACITY = 16384;
+
+    /**
+     * Durably writes a batch of coins, all or nothing
+     */
+    interface Committer
+    {
+        /**
+         * @param coins The coins to be written
+         * @return True if every coin was written, false if none was
+         */
+        boolean commit(List<PendingCoin> coins);
+    }
+
+    /**
+     * A coin waiting to be written
+     */
+    static final class PendingCoin
+    {
+        final String serialNumber;
+        final String country;
+        final byte[] value;
+        private final CompletableFuture<Boolean> saved = new CompletableFuture<>();
+
+        private PendingCoin(String serialNumber, String country, byte[] value)
+        {
+            this.serialNumber = serialNumber;
+            this.country = country;
+            this.value = value;
+        }
+    }
+
+    // Tells the writer thread to stop once everything before it has been written
+    private static final PendingCoin SHUTDOWN = new PendingCoin(null, null, null);
+
+    private final Committer committer;
+    private final int maxBatchSize;
+    private final long windowNanos;
+
+    private final LinkedBlockingQueue<PendingCoin> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+
+    /*
+     * Submitters hold the read lock from checking closed until their coin is queued, and close()
+     * holds the write lock to set closed and queue SHUTDOWN, so every coin that is accepted is
+     * queued ahead of SHUTDOWN and written
+     */
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+
+    private boolean closed;
+
+    /**
+     * Starts the writer thread
+     *
+     * @param committer      Writes the batches to the vault
+     * @param maxBatchSize   The most coins to commit in one batch
+     * @param windowMillis   How long to keep collecting coins after the first one arrives
+     */
+    CoinWriter(Committer committer, int maxBatchSize, long windowMillis)
+    {
+        this.committer = committer;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+
+        this.writer = new Thread(this::run, "coin-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a coin for writing
+     *
+     * @param serialNumber The key with which to store the coin
+     * @param country      The country associated with the coin
+     * @param value        The value to be stored
+     * @return A future completed with true once the coin is committed, false if it could not be written
+     */
+    CompletableFuture<Boolean> submit(String serialNumber, String country, byte[] value)
+    {
+        PendingCoin coin = new PendingCoin(serialNumber, country, value);
+
+        closing.readLock().lock();
+
+        try
+        {
+            if (closed)
+            {
+                coin.saved.complete(false);
+                return coin.saved;
+            }
+
+            queue.put(coin);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            coin.saved.complete(false);
+        }
+        finally
+        {
+            closing.readLock().unlock();
+        }
+
+        return coin.saved;
+    }
+
+    /**
+     * Stops accepting coins and waits for the queued ones to be written
+     */
+    void close()
+    {
+        closing.writeLock().lock();
+
+        try
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            closed = true;
+            queue.put(SHUTDOWN);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        finally
+        {
+            closing.writeLock().unlock();
+        }
+
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The writer loop
+     */
+    private void run()
+    {
+        List<PendingCoin> batch = new ArrayList<>(maxBatchSize);
+        boolean shuttingDown = false;
+
+        while (!shuttingDown)
+        {
+            try
+            {
+                PendingCoin first = queue.take();
+
+                if (first == SHUTDOWN)
+                {
+                    break;
+                }
+
+                batch.add(first);
+
+                /*
+                 * Keep collecting until the window closes or the batch is full
+                 */
+                long deadline = System.nanoTime() + windowNanos;
+
+                while (batch.size() < maxBatchSize)
+                {
+                    long remaining = deadline - System.nanoTime();
+
+                    PendingCoin next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+
+                    if (next == null)
+                    {
+                        break;
+                    }
+
+                    if (next == SHUTDOWN)
+                    {
+                        shuttingDown = true;
+                        break;
+                    }
+
+                    batch.add(next);
+                }
+
+                write(batch);
+            }
+            catch (InterruptedException ex)
+            {
+                shuttingDown = true;
+            }
+            finally
+            {
+                for (PendingCoin coin : batch)
+                {
+                    // Anything left incomplete could not be written
+                    coin.saved.complete(false);
+                }
+
+                batch.clear();
+            }
+        }
+
+        /*
+         * Nothing can be written anymore. Do not leave anyone waiting
+         */
+        PendingCoin abandoned;
+
+        while ((abandoned = queue.poll()) != null)
+        {
+            abandoned.saved.complete(false);
+        }
+    }
+
+    /**
+     * Writes a batch of coins in a single commit. If the commit fails,
+     * the coins are retried one by one so that a single bad coin does not fail the others
+     *
+     * @param batch The coins to be written
+     */
+    private void write(List<PendingCoin> batch)
+    {
+        if (committer.commit(batch))
+        {
+            for (PendingCoin coin : batch)
+            {
+                coin.saved.complete(true);
+            }
+
+            return;
+        }
+
+        if (batch.size() == 1)
+        {
+            return;
+        }
+
+        for (PendingCoin coin : batch)
+        {
+            List<PendingCoin> single = new ArrayList<>(1);
+            single.add(coin);
+
+            coin.saved.complete(committer.commit(single));
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The supported currencies, built once from the {@value #INDEX} index.
+ * <p>
+ * Each line of the index names a {@link Money} implementation, for example
+ * {@code currency.Kenya}, or the resource path of a {@link CurrencySpec} ending in .json,
+ * for example {@code currency/uganda.json}. Specs are compiled here, so a malformed spec
+ * fails at startup, as does a country that is declared twice. Blank lines and lines starting with # are ignored. Every
+ * index on the classpath is read, so additional jars may contribute currencies.
+ * Unlike scanning the {@code currency} package folder, this works the same from
+ * an IDE, a plain jar or a Spring Boot fat jar.
+ */
+public final class CurrencyRegistry
+{
+    static final String INDEX = "META-INF/currencies";
+
+    private static final String SPEC_SUFFIX = ".json";
+
+    private static volatile CurrencyRegistry registry;
+
+    // Constructors taking the input values, by country name
+    private final Map<String, MethodHandle> constructors;
+
+    private final List<String> countries;
+
+    private final String supportMatrixJson;
+    private final String prettySupportMatrixJson;
+
+    private CurrencyRegistry(Map<String, MethodHandle> constructors) throws IOException
+    {
+        this.constructors = Collections.unmodifiableMap(constructors);
+        this.countries = Collections.unmodifiableList(new ArrayList<>(constructors.keySet()));
+        this.supportMatrixJson = Json.write(countries);
+        this.prettySupportMatrixJson = Json.write(countries, true);
+    }
+
+    /**
+     * Builds the registry. This is meant to be called once at startup; otherwise the
+     * registry is built the first time it is used
+     *
+     * @throws IOException            Error reading the index, a spec in it is missing or not valid, or two
+     *                                currencies are declared for the same country
+     * @throws ClassNotFoundException A currency in the index does not exist
+     * @throws NoSuchMethodException  A currency does not have a public constructor taking a HashMap
+     * @throws IllegalAccessException A currency constructor is not accessible
+     */
+    public static synchronized void load()
+            throws IOException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException
+    {
+        registry = build();
+    }
+
+    /**
+     * The countries that are currently supported
+     *
+     * @return The country names, in alphabetical order
+     */
+    public static List<String> countries()
+    {
+        return get().countries;
+    }
+
+    /**
+     * The supported countries as JSON, serialized once
+     *
+     * @param pretty True for the JSON indented for people to read
+     * @return The JSON array of country names
+     */
+    public static String supportMatrixJson(boolean pretty)
+    {
+        CurrencyRegistry currencies = get();
+
+        return pretty ? currencies.prettySupportMatrixJson : currencies.supportMatrixJson;
+    }
+
+    /**
+     * Checks whether a country is supported
+     *
+     * @param country The name of the country eg "Kenya"
+     * @return True if the country is supported
+     */
+    public static boolean isSupported(String country)
+    {
+        return country != null && get().constructors.containsKey(country);
+    }
+
+    /**
+     * Creates the Money implementation of a given country
+     *
+     * @param country The name of the country eg "Kenya"
+     * @param values  The input values
+     * @return The Money holding the values
+     * @throws IllegalArgumentException  The country is not supported
+     * @throws InvocationTargetException The constructor of the currency threw an exception
+     */
+    public static Money create(String country, HashMap<String, String> values) throws InvocationTargetException
+    {
+        MethodHandle constructor = get().constructors.get(country);
+
+        if (constructor == null)
+        {
+            throw new IllegalArgumentException(String.format("%s is unsupported", country));
+        }
+
+        try
+        {
+            return (Money) constructor.invokeExact(values);
+        }
+        catch (RuntimeException | Error ex)
+        {
+            throw ex;
+        }
+        catch (Throwable throwable)
+        {
+            throw new InvocationTargetException(throwable);
+        }
+    }
+
+    /**
+     * The registry, built on first use if it was not loaded at startup
+     *
+     * @return The registry
+     */
+    private static CurrencyRegistry get()
+    {
+        CurrencyRegistry current = registry;
+
+        if (current == null)
+        {
+            synchronized (CurrencyRegistry.class)
+            {
+                if (registry == null)
+                {
+                    try
+                    {
+                        registry = build();
+                    }
+                    catch (IOException | ReflectiveOperationException ex)
+                    {
+                        throw new IllegalStateException("Could not load the supported currencies", ex);
+                    }
+                }
+
+                current = registry;
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Reads every index on the classpath, resolves the constructors of the currencies and
+     * compiles the specs
+     *
+     * @return The registry
+     * @throws IOException            Error reading the index, a spec in it is missing or not valid, or two
+     *                                currencies are declared for the same country
+     * @throws ClassNotFoundException A currency in the index does not exist
+     * @throws NoSuchMethodException  A currency does not have a public constructor taking a HashMap
+     * @throws IllegalAccessException A currency constructor is not accessible
+     */
+    private static CurrencyRegistry build()
+            throws IOException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException
+    {
+        ClassLoader classLoader = CurrencyRegistry.class.getClassLoader();
+
+        MethodType constructorType = MethodType.methodType(void.class, HashMap.class);
+        MethodType factoryType = MethodType.methodType(Money.class, HashMap.class);
+
+        MethodHandle declaredConstructor = MethodHandles.lookup().findConstructor(DeclaredCurrency.class,
+                MethodType.methodType(void.class, CurrencySpec.class, HashMap.class));
+
+        TreeMap<String, MethodHandle> constructors = new TreeMap<>();
+
+        // Where each country was declared, to name both sides of a clash
+        HashMap<String, String> sources = new HashMap<>();
+
+        Enumeration<URL> indexes = classLoader.getResources(INDEX);
+
+        while (indexes.hasMoreElements())
+        {
+            URL index = indexes.nextElement();
+
+            for (String className : readIndex(index))
+            {
+                String source = String.format("%s in %s", className, index);
+
+                if (className.endsWith(SPEC_SUFFIX))
+                {
+                    URL location = classLoader.getResource(className);
+
+                    if (location == null)
+                    {
+                        throw new IOException(String.format("Currency spec %s not found", className));
+                    }
+
+                    CurrencySpec spec = CurrencySpec.read(location);
+
+                    MethodHandle constructor = MethodHandles.insertArguments(declaredConstructor, 0, spec)
+                            .asType(factoryType);
+
+                    declare(constructors, sources, spec.country(), constructor, source);
+
+                    continue;
+                }
+
+                Class<? extends Money> currency = Class.forName(className, true, classLoader).asSubclass(Money.class);
+
+                MethodHandle constructor = MethodHandles.publicLookup()
+                        .findConstructor(currency, constructorType)
+                        .asType(factoryType);
+
+                declare(constructors, sources, currency.getSimpleName(), constructor, source);
+            }
+        }
+
+        return new CurrencyRegistry(constructors);
+    }
+
+    /**
+     * Adds the constructor of a country, which must not have been declared already
+     *
+     * @param constructors The constructors declared so far, by country name
+     * @param sources      Where each country was declared
+     * @param country      The name of the country eg "Kenya"
+     * @param constructor  The constructor of the currency
+     * @param source       Where the currency is declared, the index line and the index
+     * @throws IOException The country is already declared elsewhere
+     */
+    private static void declare(Map<String, MethodHandle> constructors, Map<String, String> sources,
+                                String country, MethodHandle constructor, String source) throws IOException
+    {
+        String existing = sources.putIfAbsent(country, source);
+
+        if (existing != null)
+        {
+            throw new IOException(String.format("%s is declared twice, by %s and by %s", country, existing, source));
+        }
+
+        constructors.put(country, constructor);
+    }
+
+    /**
+     * Reads the class names and spec paths listed in an index
+     *
+     * @param index The location of the index
+     * @return The class names and spec paths
+     * @throws IOException Error reading the index
+     */
+    private static List<String> readIndex(URL index) throws IOException
+    {
+        List<String> classNames = new ArrayList<>();
+
+        try (InputStream stream = index.openStream();
+             BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8)))
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+
+                if (!line.isEmpty() && !line.startsWith("#"))
+                {
+                    classNames.add(line);
+                }
+            }
+        }
+
+        return classNames;
+    }
+}
@@ -0,0 +1,477 @@
+package core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A currency declared in JSON instead of written as a {@link Money} class.
+ * <p>
+ * A spec is read once at startup and compiled into the same {@link FieldValidator}s and
+ * {@link ValidationPlan} that a hand written currency gets, so validating a declared currency
+ * costs no more than validating a class. A spec looks like
+ * <pre>
+ * {
+ *   "country": "Kenya",
+ *   "countryCode": "KE",
+ *   "currencyName": "Kenya Shilling",
+ *   "currencyCode": "KES",
+ *   "fields": [
+ *     {
+ *       "name": "accountNumber",
+ *       "label": "Account Number",
+ *       "rules": [
+ *         {"pattern": "\\d+", "message": "Enter a valid account number"},
+ *         {"notTrivial": true}
+ *       ],
+ *       "derived": [{"name": "accountNumberCode", "start": 0, "end": 4}]
+ *     },
+ *     {"name": "taxCertificate", "label": "KRA PIN Certificate", "warning": "Will be verified by the tax authorities"},
+ *     {"name": "BIC", "optional": true, "warning": "Should be derived!"}
+ *   ]
+ * }
+ * </pre>
+ * Fields are essential unless they are optional, and essential fields need a label. The rules
+ * of a field run in order and the first one that fails gives the error. A rule is one of
+ * <ul>
+ * <li>{@code "minLength": 3} and {@code "maxLength": 34}</li>
+ * <li>{@code "pattern": "\\d+"}, which must match the whole value</li>
+ * <li>{@code "notTrivial": true}, which rejects values such as 123456</li>
+ * <li>{@code "checksum": "luhn"} or {@code "checksum": "iban"}</li>
+ * </ul>
+ * with an optional {@code "message"}. A value that passes every rule gets the warning of its
+ * field, if any, and its derived values, each the characters from start up to end of the input
+ * value, or fewer if the value is shorter. Anything else in a spec is an error, so that a typo
+ * fails at startup rather than letting values through.
+ * <p>
+ * Specs are listed in the {@value CurrencyRegistry#INDEX} index by their resource path, for
+ * example {@code currency/uganda.json}.
+ */
+final class CurrencySpec
+{
+    private static final Set<String> SPEC_KEYS = new HashSet<>(Arrays.asList(
+            "country", "countryCode", "currencyName", "currencyCode", "fields"
+    ));
+
+    private static final Set<String> FIELD_KEYS = new HashSet<>(Arrays.asList(
+            "name", "label", "optional", "rules", "warning", "derived"
+    ));
+
+    private static final Set<String> DERIVED_KEYS = new HashSet<>(Arrays.asList(
+            "name", "start", "end"
+    ));
+
+    private final String country;
+    private final String countryCode;
+    private final String currencyName;
+    private final String currencyCode;
+    private final List<Field> essentialFields;
+    private final Map<String, FieldValidator> validators;
+    private final ValidationPlan plan;
+
+    private CurrencySpec(String country, String countryCode, String currencyName, String currencyCode,
+                         List<Field> essentialFields, Map<String, FieldValidator> validators)
+    {
+        this.country = country;
+        this.countryCode = countryCode;
+        this.currencyName = currencyName;
+        this.currencyCode = currencyCode;
+        this.essentialFields = Collections.unmodifiableList(essentialFields);
+        this.validators = Collections.unmodifiableMap(validators);
+        this.plan = ValidationPlan.compile(DeclaredCurrency.class, country, this.essentialFields, this.validators);
+    }
+
+    /**
+     * Reads and compiles a spec
+     *
+     * @param location The location of the spec
+     * @return The compiled spec
+     * @throws IOException Error reading the spec, or the spec is not valid
+     */
+    static CurrencySpec read(URL location) throws IOException
+    {
+        JsonNode spec;
+
+        try (InputStream stream = location.openStream())
+        {
+            spec = Json.readTree(stream);
+        }
+
+        try
+        {
+            return compile(spec);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new IOException(String.format("Invalid currency spec %s: %s", location, ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     * Compiles a spec
+     *
+     * @param spec The spec
+     * @return The compiled spec
+     * @throws IllegalArgumentException The spec is not valid
+     */
+    static CurrencySpec compile(JsonNode spec)
+    {
+        checkKeys(spec, SPEC_KEYS, "The spec");
+
+        String country = text(spec, "country", true);
+
+        JsonNode fields = spec.get("fields");
+
+        if (fields == null || !fields.isArray() || fields.size() == 0)
+        {
+            throw new IllegalArgumentException("fields must be a list of at least one field");
+        }
+
+        List<Field> essentialFields = new ArrayList<>();
+        LinkedHashMap<String, FieldValidator> validators = new LinkedHashMap<>();
+
+        for (JsonNode field : fields)
+        {
+            checkKeys(field, FIELD_KEYS, "A field");
+
+            String name = text(field, "name", true);
+            boolean optional = field.has("optional") && bool(field, "optional");
+
+            if (validators.containsKey(name))
+            {
+                throw new IllegalArgumentException(String.format("%s is declared more than once", name));
+            }
+
+            if (!optional)
+            {
+                essentialFields.add(new Field(name, text(field, "label", true)));
+            }
+
+            validators.put(name, compileField(name, field));
+        }
+
+        return new CurrencySpec(country, text(spec, "countryCode", true), text(spec, "currencyName", true),
+                text(spec, "currencyCode", true), essentialFields, validators);
+    }
+
+    /**
+     * Compiles the rules, warning and derived values of a field into one validator
+     *
+     * @param name  The name of the field
+     * @param field The field
+     * @return The validator
+     */
+    private static FieldValidator compileField(String name, JsonNode field)
+    {
+        FieldValidator validator = null;
+
+        JsonNode rules = field.get("rules");
+
+        if (rules != null)
+        {
+            if (!rules.isArray())
+            {
+                throw new IllegalArgumentException(String.format("The rules of %s must be a list", name));
+            }
+
+            for (JsonNode rule : rules)
+            {
+                FieldValidator next = compileRule(name, rule);
+                validator = validator == null ? next : validator.then(next);
+            }
+        }
+
+        String warning = text(field, "warning", false);
+
+        JsonNode derivations = field.get("derived");
+        List<String> derivedNames = new ArrayList<>();
+        List<int[]> derivedRanges = new ArrayList<>();
+
+        if (derivations != null)
+        {
+            if (!derivations.isArray())
+            {
+                throw new IllegalArgumentException(String.format("The derived values of %s must be a list", name));
+            }
+
+            for (JsonNode derived : derivations)
+            {
+                checkKeys(derived, DERIVED_KEYS, "A derived value of " + name);
+
+                int start = number(derived, "start");
+                int end = number(derived, "end");
+
+                if (end < start)
+                {
+                    throw new IllegalArgumentException(
+                            String.format("A derived value of %s ends before it starts", name));
+                }
+
+                derivedNames.add(text(derived, "name", true));
+                derivedRanges.add(new int[]{start, end});
+            }
+        }
+
+        if (warning != null || !derivedNames.isEmpty())
+        {
+            FieldValidator finish = finish(warning,
+                    derivedNames.toArray(new String[0]), derivedRanges.toArray(new int[0][]));
+
+            validator = validator == null ? finish : validator.then(finish);
+        }
+
+        return validator == null ? Validators.accept() : validator;
+    }
+
+    /**
+     * Compiles one rule of a field
+     *
+     * @param name The name of the field
+     * @param rule The rule
+     * @return The validator of the rule
+     */
+    private static FieldValidator compileRule(String name, JsonNode rule)
+    {
+        if (!rule.isObject())
+        {
+            throw new IllegalArgumentException(String.format("A rule of %s is not an object", name));
+        }
+
+        String message = text(rule, "message", false);
+        String kind = null;
+
+        Iterator<String> keys = rule.fieldNames();
+
+        while (keys.hasNext())
+        {
+            String key = keys.next();
+
+            if (!key.equals("message"))
+            {
+                if (kind != null)
+                {
+                    throw new IllegalArgumentException(
+                            String.format("A rule of %s has both %s and %s, give each its own rule", name, kind, key));
+                }
+
+                kind = key;
+            }
+        }
+
+        if (kind == null)
+        {
+            throw new IllegalArgumentException(String.format("A rule of %s checks nothing", name));
+        }
+
+        switch (kind)
+        {
+            case "minLength":
+            {
+                int length = number(rule, kind);
+                return Validators.minLength(length,
+                        message != null ? message : String.format("Must be at least %d characters long", length));
+            }
+            case "maxLength":
+            {
+                int length = number(rule, kind);
+                return Validators.maxLength(length,
+                        message != null ? message : String.format("Must be at most %d characters long", length));
+            }
+            case "pattern":
+                return Validators.matching(Pattern.compile(text(rule, kind, true)),
+                        message != null ? message : "Not a valid value");
+            case "notTrivial":
+                if (!bool(rule, kind))
+                {
+                    throw new IllegalArgumentException(
+                            String.format("notTrivial of %s must be true, or be left out", name));
+                }
+                return Validators.notTrivial(message != null ? message : "Trivial value detected");
+            case "checksum":
+            {
+                String checksum = text(rule, kind, true);
+                String checksumMessage = message != null ? message : "The check digits are wrong";
+
+                switch (checksum)
+                {
+                    case "luhn":
+                        return Validators.luhn(checksumMessage);
+                    case "iban":
+                        return Validators.iban(checksumMessage);
+                    default:
+                        throw new IllegalArgumentException(
+                                String.format("Unknown checksum %s of %s, expected luhn or iban", checksum, name));
+                }
+            }
+            default:
+                throw new IllegalArgumentException(String.format("Unknown rule %s of %s", kind, name));
+        }
+    }
+
+    /**
+     * The last step of a field, run once its value passed every rule
+     *
+     * @param warning       The warning of the field, or null
+     * @param derivedNames  The names of the derived values
+     * @param derivedRanges The start and end of each derived value, by the same index
+     * @return The validator
+     */
+    private static FieldValidator finish(String warning, String[] derivedNames, int[][] derivedRanges)
+    {
+        return (field, inputValue) ->
+        {
+            FieldResult result = FieldResult.valid(field, inputValue);
+
+            for (int i = 0; i < derivedNames.length; i++)
+            {
+                int length = inputValue.length();
+                int start = Math.min(derivedRanges[i][0], length);
+                int end = Math.min(derivedRanges[i][1], length);
+
+                result = result.withDerived(derivedNames[i], inputValue.substring(start, end));
+            }
+
+            return warning == null ? result : result.withWarning(warning);
+        };
+    }
+
+    private static void checkKeys(JsonNode node, Set<String> allowed, String what)
+    {
+        if (!node.isObject())
+        {
+            throw new IllegalArgumentException(String.format("%s is not an object", what));
+        }
+
+        Iterator<String> keys = node.fieldNames();
+
+        while (keys.hasNext())
+        {
+            String key = keys.next();
+
+            if (!allowed.contains(key))
+            {
+                throw new IllegalArgumentException(String.format("%s has an unknown key %s", what, key));
+            }
+        }
+    }
+
+    private static String text(JsonNode node, String key, boolean required)
+    {
+        JsonNode value = node.get(key);
+
+        if (value == null || value.isNull())
+        {
+            if (required)
+            {
+                throw new IllegalArgumentException(String.format("%s is missing", key));
+            }
+
+            return null;
+        }
+
+        if (!value.isTextual() || value.asText().isEmpty())
+        {
+            throw new IllegalArgumentException(String.format("%s must be a non-empty string", key));
+        }
+
+        return value.asText();
+    }
+
+    private static boolean bool(JsonNode node, String key)
+    {
+        JsonNode value = node.get(key);
+
+        if (value == null || !value.isBoolean())
+        {
+            throw new IllegalArgumentException(String.format("%s must be true or false", key));
+        }
+
+        return value.booleanValue();
+    }
+
+    private static int number(JsonNode node, String key)
+    {
+        JsonNode value = node.get(key);
+
+        if (value == null || !value.canConvertToInt() || !value.isIntegralNumber() || value.intValue() < 0)
+        {
+            throw new IllegalArgumentException(String.format("%s must be a whole number of at least 0", key));
+        }
+
+        return value.intValue();
+    }
+
+    /**
+     * The name of the country
+     *
+     * @return The country name eg "Kenya"
+     */
+    String country()
+    {
+        return country;
+    }
+
+    /**
+     * The ISO code of the country
+     *
+     * @return The country code eg "KE"
+     */
+    String countryCode()
+    {
+        return countryCode;
+    }
+
+    /**
+     * The name of the currency
+     *
+     * @return The currency name eg "Kenya Shilling"
+     */
+    String currencyName()
+    {
+        return currencyName;
+    }
+
+    /**
+     * The ISO code of the currency
+     *
+     * @return The currency code eg "KES"
+     */
+    String currencyCode()
+    {
+        return currencyCode;
+    }
+
+    /**
+     * The essential fields, in the order they are declared
+     *
+     * @return The essential fields
+     */
+    List<Field> essentialFields()
+    {
+        return essentialFields;
+    }
+
+    /**
+     * The compiled validator of every field, essential or optional
+     *
+     * @return The validators by field name
+     */
+    Map<String, FieldValidator> validators()
+    {
+        return validators;
+    }
+
+    /**
+     * The plan of the currency, compiled with the spec
+     *
+     * @return The plan
+     */
+    ValidationPlan plan()
+    {
+        return plan;
+    }
+}
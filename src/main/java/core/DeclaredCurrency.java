@@ -0,0 +1,75 @@
+package core;
+
+import exceptions.FieldClashException;
+import exceptions.IncompleteFieldDefinitionException;
+
+import javax.crypto.NoSuchPaddingException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A currency declared in a {@link CurrencySpec}. Every declared currency shares this class and
+ * is told apart by its spec, which also holds its plan
+ */
+final class DeclaredCurrency extends Money
+{
+    private final CurrencySpec spec;
+
+    /**
+     * Constructor of a declared currency
+     *
+     * @param spec   The compiled spec of the currency
+     * @param values The input values of the essential and optional fields by field name
+     * @throws NoSuchMethodException              Undefined validators
+     * @throws IncompleteFieldDefinitionException Field definition is incomplete
+     * @throws FieldClashException                Attempting to define optional field with the same name as an essential field
+     * @throws NoSuchPaddingException             Invalid padding in the key file
+     * @throws NoSuchAlgorithmException           Invalid encryption algorithm
+     */
+    DeclaredCurrency(CurrencySpec spec, HashMap<String, String> values) throws NoSuchMethodException,
+            IncompleteFieldDefinitionException, FieldClashException,
+            NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException
+    {
+        super(values, spec.plan());
+        this.spec = spec;
+    }
+
+    @Override
+    public String getCountryName()
+    {
+        return spec.country();
+    }
+
+    @Override
+    public String getCountryCode()
+    {
+        return spec.countryCode();
+    }
+
+    @Override
+    public String getCurrencyName()
+    {
+        return spec.currencyName();
+    }
+
+    @Override
+    public String getCurrencyCode()
+    {
+        return spec.currencyCode();
+    }
+
+    @Override
+    public List<Field> essentialFields()
+    {
+        return spec.essentialFields();
+    }
+
+    @Override
+    protected Map<String, FieldValidator> validators()
+    {
+        return spec.validators();
+    }
+}
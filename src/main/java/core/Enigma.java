@@ -10,18 +10,30 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 
 import static core.LockSmith.CIPHER_ALGORITHM;
-import static java.nio.file.Files.readAllBytes;
 
 /**
  * Encrypt and decrypt strings and texts
+ * <p>
+ * A single Enigma is shared by the whole application. Cipher objects are not thread safe,
+ * so each thread is given its own Cipher, created the first time that thread needs one
+ * and reused for every operation afterwards.
  */
 class Enigma
 {
-    private Cipher cipher;
+    private static volatile Enigma instance;
+
+    private final ThreadLocal<Cipher> cipher;
+
+    // How coins are protected, see protect()
+    static final String SIGNING_PROPERTY = "coin.signing";
+
+    private final Envelope envelope;
+
+    private final Notary notary;
+
+    private final String signing;
 
     /**
      * Instantiate the class and encryption algorithm
@@ -30,19 +42,64 @@ class Enigma
      * @throws NoSuchPaddingException An exception with the CIPHER_ALGORITHM in place
      * @throws NoSuchProviderException Missing or invalid encryption provider
      */
-    Enigma() throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException
+    private Enigma() throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException
     {
-        /**
-         * Initialize a LockSmith object in order to create any keys that may be missing
+        /*
+         * Fail here rather than on a worker thread if the algorithm is unavailable
          */
-        LockSmith lockSmith = new LockSmith();
+        Cipher.getInstance(CIPHER_ALGORITHM);
+
+        this.cipher = ThreadLocal.withInitial(() ->
+        {
+            try
+            {
+                return Cipher.getInstance(CIPHER_ALGORITHM);
+            }
+            catch (NoSuchAlgorithmException | NoSuchPaddingException ex)
+            {
+                // Already ruled out by the constructor
+                throw new IllegalStateException(ex);
+            }
+        });
 
-        this.cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+        this.envelope = new Envelope(this);
+        this.notary = new Notary(envelope);
+        this.signing = System.getProperty(SIGNING_PROPERTY, "off");
+    }
+
+    /**
+     * The Enigma shared by the application, created on first use
+     *
+     * @return The shared Enigma
+     * @throws NoSuchAlgorithmException An exception with the CIPHER_ALGORITHM in place
+     * @throws NoSuchPaddingException An exception with the CIPHER_ALGORITHM in place
+     * @throws NoSuchProviderException Missing or invalid encryption provider
+     */
+    static Enigma getInstance() throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException
+    {
+        Enigma enigma = instance;
+
+        if (enigma == null)
+        {
+            synchronized (Enigma.class)
+            {
+                if (instance == null)
+                {
+                    instance = new Enigma();
+                }
+
+                enigma = instance;
+            }
+        }
+
+        return enigma;
     }
 
     /**
      * Provide a PrivateKey from the encryption algorithm according to the details at
      * https://docs.oracle.com/javase/8/docs/api/java/security/spec/PKCS8EncodedKeySpec.html
+     * <p>
+     * The key file is only read the first time. Afterwards the parsed key is served from the {@link KeyRing}
      *
      * @return  a PrivateKey that can be used for data decryption
      * @throws IOException Input/output exception arising from reading the key file
@@ -52,16 +109,15 @@ class Enigma
     PrivateKey getPrivate()
             throws IOException, InvalidKeySpecException, NoSuchAlgorithmException
     {
-        // The public key at any one time will be LockSmith.PRIVATE_KEY
-        byte[] keyBytes = readAllBytes(new File(LockSmith.PRIVATE_KEY).toPath());
-        PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(keyBytes);
-        KeyFactory kf = KeyFactory.getInstance(CIPHER_ALGORITHM);
-        return kf.generatePrivate(spec);
+        // The private key at any one time will be the one parsed from LockSmith.PRIVATE_KEY
+        return KeyRing.current().privateKey;
     }
 
     /**
      * Provide a PublicKey from the encryption algorithm according to the details at
      * https://docs.oracle.com/javase/8/docs/api/java/security/spec/X509EncodedKeySpec.html
+     * <p>
+     * The key file is only read the first time. Afterwards the parsed key is served from the {@link KeyRing}
      *
      * @return a PublicKey for data encryption
      * @throws IOException Input/output exception arising from reading the key file
@@ -71,11 +127,8 @@ class Enigma
     PublicKey getPublic()
             throws IOException, NoSuchAlgorithmException, InvalidKeySpecException
     {
-        // The public key at any one time will be LockSmith.PUBLIC_KEY
-        byte[] keyBytes = readAllBytes(new File(LockSmith.PUBLIC_KEY).toPath());
-        X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
-        KeyFactory kf = KeyFactory.getInstance(CIPHER_ALGORITHM);
-        return kf.generatePublic(spec);
+        // The public key at any one time will be the one parsed from LockSmith.PUBLIC_KEY
+        return KeyRing.current().publicKey;
     }
 
     /**
@@ -90,8 +143,9 @@ class Enigma
     void encryptFile(byte[] input, File output, PrivateKey key)
             throws IOException, GeneralSecurityException
     {
-        this.cipher.init(Cipher.ENCRYPT_MODE, key);
-        writeToFile(output, this.cipher.doFinal(input));
+        Cipher cipher = this.cipher.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        writeToFile(output, cipher.doFinal(input));
     }
 
     /**
@@ -106,8 +160,9 @@ class Enigma
     void decryptFile(byte[] input, File output, PublicKey key)
             throws IOException, GeneralSecurityException
     {
-        this.cipher.init(Cipher.DECRYPT_MODE, key);
-        writeToFile(output, this.cipher.doFinal(input));
+        Cipher cipher = this.cipher.get();
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        writeToFile(output, cipher.doFinal(input));
     }
 
     /**
@@ -140,7 +195,8 @@ class Enigma
             throws IllegalBlockSizeException,
             BadPaddingException, InvalidKeyException
     {
-        this.cipher.init(Cipher.ENCRYPT_MODE, key);
+        Cipher cipher = this.cipher.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key);
 
         return Base64.encodeBase64String(cipher.doFinal(msg.getBytes(StandardCharsets.UTF_8)));
     }
@@ -159,7 +215,101 @@ class Enigma
             throws InvalidKeyException,
             IllegalBlockSizeException, BadPaddingException
     {
-        this.cipher.init(Cipher.DECRYPT_MODE, key);
+        Cipher cipher = this.cipher.get();
+        cipher.init(Cipher.DECRYPT_MODE, key);
         return new String(cipher.doFinal(Base64.decodeBase64(msg)), StandardCharsets.UTF_8);
     }
+
+    /**
+     * Protect a coin payload for storage. By default the payload is sealed in an envelope.
+     * When the {@value #SIGNING_PROPERTY} system property is "plain" or "sealed", the payload
+     * is instead signed by the {@link Notary}, in plain form or sealed in an envelope respectively
+     *
+     * @param coin The encoded coin to be protected, see {@link CoinCodec}
+     * @return The protected payload, ready to be stored
+     * @throws GeneralSecurityException A general exception with the security during encryption or signing
+     * @throws IOException Input/output exception arising from reading the key file
+     */
+    byte[] protect(byte[] coin) throws GeneralSecurityException, IOException
+    {
+        switch (signing)
+        {
+            case "plain":
+                return notary.sign(coin, false);
+            case "sealed":
+                return notary.sign(coin, true);
+            default:
+                return envelope.sealBytes(coin);
+        }
+    }
+
+    /**
+     * Recover a stored coin payload, whether it is a signed coin, an envelope or legacy RSA output,
+     * and whether it holds an encoded coin or, from before coins were encoded, the coin JSON
+     *
+     * @param coinId The id of the coin, under which signature checks are remembered
+     * @param stored The payload as stored in the database
+     * @return The coin JSON
+     * @throws GeneralSecurityException A general exception with the security during decryption or verification
+     * @throws IOException Input/output exception arising from reading the key file
+     * @throws IllegalArgumentException The payload is malformed
+     */
+    String reveal(String coinId, byte[] stored) throws GeneralSecurityException, IOException
+    {
+        byte[] bytes = stored;
+
+        /*
+         * Payloads used to be stored as text. Text never starts with the version byte of an
+         * envelope or a signed coin
+         */
+        if (bytes.length == 0 || (bytes[0] != Envelope.VERSION && bytes[0] != Notary.VERSION))
+        {
+            String text = new String(stored, StandardCharsets.UTF_8);
+
+            if (!Envelope.isEnvelope(text))
+            {
+                return decryptText(text, getPublic());
+            }
+
+            bytes = Envelope.decode(text);
+        }
+
+        byte[] coin = bytes.length > 0 && bytes[0] == Notary.VERSION
+                ? notary.open(coinId, bytes)
+                : envelope.openBytes(bytes);
+
+        return CoinCodec.isEncoded(coin) ? CoinCodec.toJson(coin) : new String(coin, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Wrap a data key with a given private key
+     *
+     * @param dataKey The raw data key
+     * @param key     The PrivateKey to be used to wrap the data key
+     * @return The wrapped data key
+     * @throws GeneralSecurityException A general exception with the security during encryption
+     */
+    byte[] wrapKey(byte[] dataKey, PrivateKey key) throws GeneralSecurityException
+    {
+        Cipher cipher = this.cipher.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+
+        return cipher.doFinal(dataKey);
+    }
+
+    /**
+     * Unwrap a data key with a given public key
+     *
+     * @param wrapped The wrapped data key
+     * @param key     The PublicKey to be used to unwrap the data key
+     * @return The raw data key
+     * @throws GeneralSecurityException A general exception with the security during decryption
+     */
+    byte[] unwrapKey(byte[] wrapped, PublicKey key) throws GeneralSecurityException
+    {
+        Cipher cipher = this.cipher.get();
+        cipher.init(Cipher.DECRYPT_MODE, key);
+
+        return cipher.doFinal(wrapped);
+    }
 }
@@ -0,0 +1,303 @@
+package core;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Envelope encryption of coin payloads.
+ * <p>
+ * The payload is encrypted with an AES-GCM data key and only the data key goes
+ * through RSA. A data key is reused for many coins and replaced periodically, so
+ * the expensive RSA operation is paid once per data key rather than once per coin,
+ * and the payload is no longer limited to a single RSA block.
+ * <p>
+ * An envelope is laid out as
+ * <pre>
+ * [version: 1 byte][wrapped key length: 2 bytes][wrapped key][IV: 12 bytes][ciphertext and tag]
+ * </pre>
+ * and is stored as those bytes. Envelopes stored before coins were kept as bytes are text,
+ * {@value #PREFIX} followed by the Base64 of the bytes, and legacy rows, which hold plain Base64
+ * RSA output, never start with {@value #PREFIX}. Other formats, such as the signed coins of the
+ * {@link Notary}, are told apart by their version byte.
+ */
+final class Envelope
+{
+    static final String PREFIX = "$";
+
+    static final byte VERSION = 1;
+
+    private static final String DATA_KEY_ALGORITHM = "AES";
+    private static final String DATA_CIPHER = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_BITS = 256;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    // Replace the data key after this many coins, well within the safe limit for random GCM nonces
+    private static final long DATA_KEY_USES = 1L << 20;
+
+    // Replace the data key after this long regardless of use
+    private static final long DATA_KEY_LIFETIME_MILLISECONDS = 60L * 60L * 1000L;
+
+    // Data keys unwrapped while reading, by their wrapped form
+    private static final int UNWRAPPED_KEY_CACHE_SIZE = 64;
+
+    /**
+     * A data key together with its RSA-wrapped form
+     */
+    private static final class DataKey
+    {
+        private final SecretKey key;
+        private final byte[] wrapped;
+        private final PrivateKey wrappedWith;
+        private final long expiresAt;
+        private final AtomicLong uses = new AtomicLong();
+
+        private DataKey(SecretKey key, byte[] wrapped, PrivateKey wrappedWith, long expiresAt)
+        {
+            this.key = key;
+            this.wrapped = wrapped;
+            this.wrappedWith = wrappedWith;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Enigma enigma;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return Cipher.getInstance(DATA_CIPHER);
+        }
+        catch (GeneralSecurityException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final ConcurrentHashMap<String, SecretKey> unwrappedKeys = new ConcurrentHashMap<>();
+
+    private volatile DataKey dataKey;
+
+    /**
+     * Instantiate the envelope
+     *
+     * @param enigma The RSA operations used to wrap and unwrap the data keys
+     */
+    Envelope(Enigma enigma)
+    {
+        this.enigma = enigma;
+    }
+
+    /**
+     * Checks whether a value stored as text is an envelope rather than a legacy RSA payload
+     *
+     * @param stored The value as stored in the database
+     * @return True if the value is an envelope
+     */
+    static boolean isEnvelope(String stored)
+    {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Encrypts a payload into the raw bytes of an envelope
+     *
+     * @param payload The bytes to be encrypted
+     * @return The envelope bytes
+     * @throws GeneralSecurityException Error during encryption
+     * @throws IOException              Input/output exception arising from reading the key files
+     */
+    byte[] sealBytes(byte[] payload) throws GeneralSecurityException, IOException
+    {
+        DataKey current = dataKey();
+
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+
+        byte[] header = header(current.wrapped);
+
+        Cipher cipher = this.cipher.get();
+        cipher.init(Cipher.ENCRYPT_MODE, current.key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(header);
+        byte[] ciphertext = cipher.doFinal(payload);
+
+        ByteBuffer envelope = ByteBuffer.allocate(header.length + IV_BYTES + ciphertext.length);
+        envelope.put(header).put(iv).put(ciphertext);
+
+        return envelope.array();
+    }
+
+    /**
+     * Decrypts the raw bytes of an envelope
+     *
+     * @param bytes The envelope bytes
+     * @return The decrypted payload
+     * @throws GeneralSecurityException Error during decryption, including a tampered envelope
+     * @throws IOException              Input/output exception arising from reading the key files
+     */
+    byte[] openBytes(byte[] bytes) throws GeneralSecurityException, IOException
+    {
+        ByteBuffer envelope = ByteBuffer.wrap(bytes);
+
+        /*
+         * A truncated or corrupt row must fail like a tampered one, not with a BufferUnderflowException
+         */
+        if (envelope.remaining() < Byte.BYTES + Short.BYTES)
+        {
+            throw new GeneralSecurityException("Truncated envelope");
+        }
+
+        byte version = envelope.get();
+
+        if (version != VERSION)
+        {
+            throw new GeneralSecurityException(String.format("Unsupported envelope version %d", version));
+        }
+
+        byte[] wrapped = new byte[envelope.getShort() & 0xFFFF];
+
+        if (envelope.remaining() < wrapped.length + IV_BYTES + TAG_BITS / Byte.SIZE)
+        {
+            throw new GeneralSecurityException("Truncated envelope");
+        }
+
+        envelope.get(wrapped);
+
+        byte[] iv = new byte[IV_BYTES];
+        envelope.get(iv);
+
+        byte[] ciphertext = new byte[envelope.remaining()];
+        envelope.get(ciphertext);
+
+        Cipher cipher = this.cipher.get();
+        cipher.init(Cipher.DECRYPT_MODE, unwrap(wrapped), new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(header(wrapped));
+
+        return cipher.doFinal(ciphertext);
+    }
+
+    /**
+     * The bytes of a value stored as text that starts with {@value #PREFIX}
+     *
+     * @param stored The value as stored in the database
+     * @return The decoded bytes, whose first byte is the format version
+     */
+    static byte[] decode(String stored)
+    {
+        return Base64.getDecoder().decode(stored.substring(PREFIX.length()));
+    }
+
+    /**
+     * The data key to encrypt with, replacing it if it is worn out or the RSA keys have been rotated
+     *
+     * @return The current data key
+     * @throws GeneralSecurityException Error generating or wrapping a data key
+     * @throws IOException              Input/output exception arising from reading the key files
+     */
+    private DataKey dataKey() throws GeneralSecurityException, IOException
+    {
+        PrivateKey privateKey = enigma.getPrivate();
+        DataKey current = dataKey;
+
+        if (usable(current, privateKey))
+        {
+            return current;
+        }
+
+        synchronized (this)
+        {
+            current = dataKey;
+
+            if (!usable(current, privateKey))
+            {
+                KeyGenerator generator = KeyGenerator.getInstance(DATA_KEY_ALGORITHM);
+                generator.init(DATA_KEY_BITS, random);
+                SecretKey key = generator.generateKey();
+
+                current = new DataKey(
+                        key,
+                        enigma.wrapKey(key.getEncoded(), privateKey),
+                        privateKey,
+                        System.currentTimeMillis() + DATA_KEY_LIFETIME_MILLISECONDS
+                );
+
+                dataKey = current;
+            }
+
+            return current;
+        }
+    }
+
+    /**
+     * Checks whether a data key may encrypt one more payload, counting the use if so
+     *
+     * @param current    The data key
+     * @param privateKey The RSA private key currently in use
+     * @return True if the data key can be used
+     */
+    private static boolean usable(DataKey current, PrivateKey privateKey)
+    {
+        return current != null
+                && current.wrappedWith == privateKey
+                && System.currentTimeMillis() < current.expiresAt
+                && current.uses.incrementAndGet() <= DATA_KEY_USES;
+    }
+
+    /**
+     * Recovers a data key from its wrapped form, remembering it for the next payload under the same key
+     *
+     * @param wrapped The RSA-wrapped data key
+     * @return The data key
+     * @throws GeneralSecurityException Error unwrapping the key
+     * @throws IOException              Input/output exception arising from reading the key files
+     */
+    private SecretKey unwrap(byte[] wrapped) throws GeneralSecurityException, IOException
+    {
+        String id = Base64.getEncoder().encodeToString(wrapped);
+
+        SecretKey key = unwrappedKeys.get(id);
+
+        if (key == null)
+        {
+            key = new SecretKeySpec(enigma.unwrapKey(wrapped, enigma.getPublic()), DATA_KEY_ALGORITHM);
+
+            if (unwrappedKeys.size() >= UNWRAPPED_KEY_CACHE_SIZE)
+            {
+                unwrappedKeys.clear();
+            }
+
+            unwrappedKeys.put(id, key);
+        }
+
+        return key;
+    }
+
+    /**
+     * The header of an envelope, which is also authenticated by GCM
+     *
+     * @param wrapped The RSA-wrapped data key
+     * @return The version, wrapped key length and wrapped key
+     */
+    private static byte[] header(byte[] wrapped)
+    {
+        return ByteBuffer.allocate(3 + wrapped.length)
+                .put(VERSION)
+                .putShort((short) wrapped.length)
+                .put(wrapped)
+                .array();
+    }
+}
@@ -0,0 +1,53 @@
+package core;
+
+/**
+ * The definition of an input field of a currency
+ * <p>
+ * The essential fields are returned by {@link Money#essentialFields()}. Optional fields,
+ * accepted because the currency has a validator for them, have no label.
+ */
+public final class Field
+{
+    private final String name;
+    private final String label;
+
+    /**
+     * Defines a field
+     *
+     * @param name  The name of the field, which is also the name of its input value eg "accountNumber"
+     * @param label The label of the field eg "Account Number"
+     */
+    public Field(String name, String label)
+    {
+        this.name = name;
+        this.label = label;
+    }
+
+    /**
+     * The name of the field
+     *
+     * @return The name of the field eg "accountNumber"
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * The label of the field
+     *
+     * @return The label of the field eg "Account Number", or null for optional fields
+     */
+    public String getLabel()
+    {
+        return label;
+    }
+
+    @Override
+    public String toString()
+    {
+        return label == null
+                ? String.format("{name=%s}", name)
+                : String.format("{name=%s, label=%s}", name, label);
+    }
+}
@@ -0,0 +1,258 @@
+package core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The outcome of validating the input value of a field
+ * <p>
+ * Validators return one of these instead of a HashMap, for example
+ * <pre>
+ * return FieldResult.valid(field, inputValue).withDerived("accountNumberCode", inputValue.substring(0, 4));
+ * </pre>
+ * Results are immutable. {@link #toMap()} gives the HashMap that validators used to return,
+ * which is what the service still serializes, so the JSON output does not change.
+ */
+public final class FieldResult
+{
+    private static final String[] NONE = new String[0];
+
+    private final Field field;
+    private final String inputValue;
+    private final boolean valid;
+    private final String errorMessage;
+    private final String warningMessage;
+
+    // Derived values as name, value, name, value...
+    private final String[] derived;
+
+    // False if no validator ran for the field
+    private final boolean validated;
+
+    private FieldResult(Field field, String inputValue, boolean valid, String errorMessage,
+                        String warningMessage, String[] derived, boolean validated)
+    {
+        this.field = field;
+        this.inputValue = inputValue;
+        this.valid = valid;
+        this.errorMessage = errorMessage;
+        this.warningMessage = warningMessage;
+        this.derived = derived;
+        this.validated = validated;
+    }
+
+    /**
+     * The input value of a field is valid
+     *
+     * @param field      The field
+     * @param inputValue The input value
+     * @return The result
+     */
+    public static FieldResult valid(Field field, String inputValue)
+    {
+        return new FieldResult(field, inputValue, true, null, null, NONE, true);
+    }
+
+    /**
+     * The input value of a field is not valid
+     *
+     * @param field        The field
+     * @param inputValue   The input value
+     * @param errorMessage Why the value is not valid
+     * @return The result
+     */
+    public static FieldResult invalid(Field field, String inputValue, String errorMessage)
+    {
+        return new FieldResult(field, inputValue, false, errorMessage, null, NONE, true);
+    }
+
+    /**
+     * The input value of a field could not be validated, because the validator is missing or failed
+     *
+     * @param field      The field
+     * @param inputValue The input value
+     * @return The result
+     */
+    static FieldResult unvalidated(Field field, String inputValue)
+    {
+        return new FieldResult(field, inputValue, false, null, null, NONE, false);
+    }
+
+    /**
+     * The same result with a warning attached
+     *
+     * @param warningMessage The warning
+     * @return The new result
+     */
+    public FieldResult withWarning(String warningMessage)
+    {
+        return new FieldResult(field, inputValue, valid, errorMessage, warningMessage, derived, validated);
+    }
+
+    /**
+     * The same result with a value derived from the input value
+     *
+     * @param name  The name of the derived value eg "accountNumberCode"
+     * @param value The derived value
+     * @return The new result
+     */
+    public FieldResult withDerived(String name, String value)
+    {
+        String[] more = Arrays.copyOf(derived, derived.length + 2);
+        more[derived.length] = name;
+        more[derived.length + 1] = value;
+
+        return new FieldResult(field, inputValue, valid, errorMessage, warningMessage, more, validated);
+    }
+
+    /**
+     * The field that was validated
+     *
+     * @return The field
+     */
+    public Field getField()
+    {
+        return field;
+    }
+
+    /**
+     * The input value that was validated
+     *
+     * @return The input value
+     */
+    public String getInputValue()
+    {
+        return inputValue;
+    }
+
+    /**
+     * Whether the input value is valid
+     *
+     * @return True if the value is valid
+     */
+    public boolean isValid()
+    {
+        return valid;
+    }
+
+    /**
+     * Why the input value is not valid
+     *
+     * @return The error, or null
+     */
+    public String getErrorMessage()
+    {
+        return errorMessage;
+    }
+
+    /**
+     * A warning about the input value
+     *
+     * @return The warning, or null
+     */
+    public String getWarningMessage()
+    {
+        return warningMessage;
+    }
+
+    /**
+     * A value derived from the input value
+     *
+     * @param name The name of the derived value
+     * @return The derived value, or null
+     */
+    public String getDerived(String name)
+    {
+        for (int i = 0; i < derived.length; i += 2)
+        {
+            if (derived[i].equals(name))
+            {
+                return derived[i + 1];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The result as validators used to return it
+     * <p>
+     * The keys are put in the same order as the validators did, into a map of default
+     * capacity, so the map iterates, and hence serializes, exactly as before
+     *
+     * @return The result as a HashMap
+     */
+    HashMap<String, Object> toMap()
+    {
+        return toMap(false);
+    }
+
+    /**
+     * The result as stored in a coin, that is without the validity and any warning
+     *
+     * @return The result as a HashMap
+     */
+    HashMap<String, Object> toStoredMap()
+    {
+        return toMap(true);
+    }
+
+    private HashMap<String, Object> toMap(boolean stored)
+    {
+        HashMap<String, Object> map = new HashMap<>();
+
+        if (!validated)
+        {
+            /*
+             * There is no validation result. This is the field itself, as it was entered
+             */
+            map.put("name", field.getName());
+
+            if (field.getLabel() != null)
+            {
+                map.put("label", field.getLabel());
+            }
+
+            map.put("value", inputValue);
+
+            if (!stored)
+            {
+                map.put("validity", false);
+            }
+
+            return map;
+        }
+
+        map.put("label", field.getLabel());
+        map.put("field", field.getName());
+        map.put("inputValue", inputValue);
+
+        if (errorMessage != null)
+        {
+            map.put("errorMessage", errorMessage);
+        }
+
+        if (warningMessage != null && !stored)
+        {
+            map.put("warningMessage", warningMessage);
+        }
+
+        for (int i = 0; i < derived.length; i += 2)
+        {
+            map.put(derived[i], derived[i + 1]);
+        }
+
+        if (!stored)
+        {
+            map.put("validity", valid);
+        }
+
+        return map;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toMap().toString();
+    }
+}
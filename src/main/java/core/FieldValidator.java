@@ -0,0 +1,39 @@
+package core;
+
+/**
+ * Validates the input value of a field.
+ * <p>
+ * A validator is given everything it needs and keeps nothing between calls, so a currency
+ * creates its validators once and every request, on any thread, shares them. The common
+ * checks are in {@link Validators}. A currency lists its validators by field name in
+ * {@link Money#validators()}.
+ */
+@FunctionalInterface
+public interface FieldValidator
+{
+    /**
+     * Validates an input value
+     *
+     * @param field      The field
+     * @param inputValue The input value, never null
+     * @return The result of the validation
+     */
+    FieldResult validate(Field field, String inputValue);
+
+    /**
+     * Chains another validator after this one. The other validator only runs, and gives the
+     * result, if this one finds the value valid
+     *
+     * @param next The validator to run next
+     * @return The chained validator
+     */
+    default FieldValidator then(FieldValidator next)
+    {
+        return (field, inputValue) ->
+        {
+            FieldResult result = validate(field, inputValue);
+
+            return result.isValid() ? next.validate(field, inputValue) : result;
+        };
+    }
+}
@@ -0,0 +1,408 @@
+package core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Derives the storage keys of coins, which are also their ids.
+ * <p>
+ * A coin id is the hash of the country and the canonical form of the input fields,
+ * {@code <country>.<fields as JSON>}. It is encoded as UTF-8 as it is written, into a buffer
+ * that each thread reuses, and hashed with a MessageDigest that each thread also keeps,
+ * so deriving an id builds no intermediate Strings.
+ * <p>
+ * The {@value #MODE_PROPERTY} system property picks how the id is made from the hash
+ * <ul>
+ * <li>"legacy", the default, gives exactly the ids of the coins minted so far: the bytes are
+ * Base64 encoded before they are hashed, and the hash is Base64 encoded twice</li>
+ * <li>"direct" hashes the bytes themselves and Base64 encodes the hash once, URL safe, which
+ * gives shorter ids that need no escaping in a link</li>
+ * </ul>
+ * The {@value #ALGORITHM_PROPERTY} system property names the digest, SHA3-512 by default.
+ * Changing either gives every coin a new id, so coins minted before the change are no longer
+ * found when the same values are minted again.
+ */
+final class HashingService
+{
+    static final String MODE_PROPERTY = "coin.hash";
+    static final String ALGORITHM_PROPERTY = "coin.hash.algorithm";
+
+    static final String LEGACY = "legacy";
+    static final String DIRECT = "direct";
+
+    static final String DEFAULT_ALGORITHM = "SHA3-512";
+
+    // Buffers that grew beyond this are not kept for the next coin
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    // What String.getBytes writes for a lone surrogate
+    private static final byte UNMAPPABLE = '?';
+
+    private static final byte[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    private static final Base64.Encoder LEGACY_ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Encoder DIRECT_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static volatile HashingService instance;
+
+    private final String algorithm;
+
+    private final boolean legacy;
+
+    private final ThreadLocal<MessageDigest> digest;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Instantiate the service
+     *
+     * @param algorithm The name of the digest eg "SHA3-512"
+     * @param mode      {@value #LEGACY} or {@value #DIRECT}
+     * @throws NoSuchAlgorithmException The digest is not available
+     * @throws IllegalArgumentException The mode is unknown
+     */
+    HashingService(String algorithm, String mode) throws NoSuchAlgorithmException
+    {
+        if (!LEGACY.equals(mode) && !DIRECT.equals(mode))
+        {
+            throw new IllegalArgumentException(
+                    String.format("Unknown %s %s, expected %s or %s", MODE_PROPERTY, mode, LEGACY, DIRECT));
+        }
+
+        /*
+         * Fail here rather than on a worker thread if the algorithm is unavailable
+         */
+        MessageDigest.getInstance(algorithm);
+
+        this.algorithm = algorithm;
+        this.legacy = LEGACY.equals(mode);
+        this.digest = ThreadLocal.withInitial(() ->
+        {
+            try
+            {
+                return MessageDigest.getInstance(algorithm);
+            }
+            catch (NoSuchAlgorithmException ex)
+            {
+                // Already ruled out by the constructor
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+
+    /**
+     * The service shared by the application, configured from the system properties on first use
+     *
+     * @return The shared service
+     * @throws NoSuchAlgorithmException The configured digest is not available
+     */
+    static HashingService getInstance() throws NoSuchAlgorithmException
+    {
+        HashingService service = instance;
+
+        if (service == null)
+        {
+            synchronized (HashingService.class)
+            {
+                if (instance == null)
+                {
+                    instance = new HashingService(
+                            System.getProperty(ALGORITHM_PROPERTY, DEFAULT_ALGORITHM),
+                            System.getProperty(MODE_PROPERTY, LEGACY));
+                }
+
+                service = instance;
+            }
+        }
+
+        return service;
+    }
+
+    /**
+     * Derives the id of a coin
+     *
+     * @param country  The name of the country eg "Kenya"
+     * @param fields   The input fields
+     * @param values   The input value of each field
+     * @param validity Whether each field is valid
+     * @return The coin id
+     */
+    String coinId(String country, Field[] fields, String[] values, boolean[] validity)
+    {
+        Scratch bytes = scratch.get();
+        MessageDigest messageDigest = digest.get();
+
+        try
+        {
+            bytes.reset();
+
+            bytes.write(country);
+            bytes.write('.');
+            Json.writeCanonicalFields(bytes, fields, values, validity);
+            bytes.flush();
+
+            if (!legacy)
+            {
+                messageDigest.update(bytes.buffer(), 0, bytes.size());
+
+                return DIRECT_ENCODER.encodeToString(messageDigest.digest());
+            }
+
+            updateBase64(messageDigest, bytes.buffer(), bytes.size(), bytes.chunk());
+
+            return LEGACY_ENCODER.encodeToString(LEGACY_ENCODER.encode(messageDigest.digest()));
+        }
+        catch (IOException ex)
+        {
+            // Neither the buffer nor the digest throws
+            throw new IllegalStateException(ex);
+        }
+        finally
+        {
+            messageDigest.reset();
+
+            if (bytes.buffer().length > MAX_RETAINED_BUFFER)
+            {
+                scratch.remove();
+            }
+        }
+    }
+
+    /**
+     * Feeds the Base64 of some bytes, without padding, into a digest. This is what hashing the
+     * output of Base64.Encoder would give, without the encoded copy of the bytes or the 8 KB buffer
+     * of Base64.Encoder.wrap
+     *
+     * @param messageDigest The digest
+     * @param bytes         The bytes
+     * @param length        How many of the bytes to encode
+     * @param chunk         Where to encode them, a whole number of 4 character groups at a time
+     */
+    private static void updateBase64(MessageDigest messageDigest, byte[] bytes, int length, byte[] chunk)
+    {
+        int encoded = 0;
+        int i = 0;
+
+        for (; i + 3 <= length; i += 3)
+        {
+            int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+
+            chunk[encoded++] = BASE64[bits >>> 18];
+            chunk[encoded++] = BASE64[(bits >>> 12) & 0x3F];
+            chunk[encoded++] = BASE64[(bits >>> 6) & 0x3F];
+            chunk[encoded++] = BASE64[bits & 0x3F];
+
+            if (encoded == chunk.length)
+            {
+                messageDigest.update(chunk, 0, encoded);
+                encoded = 0;
+            }
+        }
+
+        if (i < length)
+        {
+            int bits = (bytes[i] & 0xFF) << 16 | (i + 1 < length ? (bytes[i + 1] & 0xFF) << 8 : 0);
+
+            chunk[encoded++] = BASE64[bits >>> 18];
+            chunk[encoded++] = BASE64[(bits >>> 12) & 0x3F];
+
+            if (i + 1 < length)
+            {
+                chunk[encoded++] = BASE64[(bits >>> 6) & 0x3F];
+            }
+        }
+
+        messageDigest.update(chunk, 0, encoded);
+    }
+
+    /**
+     * The name of the digest
+     *
+     * @return The algorithm eg "SHA3-512"
+     */
+    String algorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * Checks whether ids are derived as they were before this service
+     *
+     * @return True in the {@value #LEGACY} mode
+     */
+    boolean isLegacy()
+    {
+        return legacy;
+    }
+
+    /**
+     * The buffer of a thread. Characters written to it are encoded as UTF-8 as they come, as
+     * String.getBytes would encode them, without a CharsetEncoder and its buffers
+     */
+    private static final class Scratch extends Writer
+    {
+        private byte[] buffer = new byte[1024];
+
+        private int size;
+
+        // The first half of a surrogate pair whose second half is yet to be written, or 0
+        private char highSurrogate;
+
+        // Base64 on its way into the digest, a whole number of 4 character groups
+        private final byte[] chunk = new byte[512];
+
+        byte[] buffer()
+        {
+            return buffer;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        byte[] chunk()
+        {
+            return chunk;
+        }
+
+        void reset()
+        {
+            size = 0;
+            highSurrogate = 0;
+        }
+
+        @Override
+        public void write(int c)
+        {
+            ensureCapacity(4);
+            encode((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length)
+        {
+            ensureCapacity(3 * length + 1);
+
+            for (int i = offset; i < offset + length; i++)
+            {
+                char c = chars[i];
+
+                if (c < 0x80 && highSurrogate == 0)
+                {
+                    buffer[size++] = (byte) c;
+                }
+                else
+                {
+                    encode(c);
+                }
+            }
+        }
+
+        @Override
+        public void write(String text, int offset, int length)
+        {
+            ensureCapacity(3 * length + 1);
+
+            for (int i = offset; i < offset + length; i++)
+            {
+                char c = text.charAt(i);
+
+                if (c < 0x80 && highSurrogate == 0)
+                {
+                    buffer[size++] = (byte) c;
+                }
+                else
+                {
+                    encode(c);
+                }
+            }
+        }
+
+        /**
+         * Ends the text, writing a surrogate that was left without its pair as String.getBytes would
+         */
+        @Override
+        public void flush()
+        {
+            if (highSurrogate != 0)
+            {
+                highSurrogate = 0;
+                ensureCapacity(1);
+                buffer[size++] = UNMAPPABLE;
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            flush();
+        }
+
+        /**
+         * Encodes one character, for which there must be room for 4 bytes
+         *
+         * @param c The character
+         */
+        private void encode(char c)
+        {
+            if (highSurrogate != 0)
+            {
+                char high = highSurrogate;
+                highSurrogate = 0;
+
+                if (Character.isLowSurrogate(c))
+                {
+                    int codePoint = Character.toCodePoint(high, c);
+
+                    buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+
+                    return;
+                }
+
+                buffer[size++] = UNMAPPABLE;
+            }
+
+            if (c < 0x80)
+            {
+                buffer[size++] = (byte) c;
+            }
+            else if (c < 0x800)
+            {
+                buffer[size++] = (byte) (0xC0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c))
+            {
+                highSurrogate = c;
+            }
+            else if (Character.isLowSurrogate(c))
+            {
+                buffer[size++] = UNMAPPABLE;
+            }
+            else
+            {
+                buffer[size++] = (byte) (0xE0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        private void ensureCapacity(int more)
+        {
+            if (buffer.length - size < more)
+            {
+                buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, size + more));
+            }
+        }
+    }
+}
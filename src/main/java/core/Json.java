@@ -0,0 +1,251 @@
+package core;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.HashMap;
+
+/**
+ * The JSON codec of the application.
+ * <p>
+ * There is a single mapper, configured once and shared by every thread. Values are written
+ * compactly, straight into the output, unless pretty printing is asked for. Null values are
+ * left out.
+ */
+public final class Json
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .setDefaultPropertyInclusion(JsonInclude.Value.construct(JsonInclude.Include.NON_NULL, JsonInclude.Include.NON_NULL));
+
+    private static final JavaType STRING_MAP = MAPPER.getTypeFactory()
+            .constructMapType(HashMap.class, String.class, String.class);
+
+    private static final ObjectWriter COMPACT = MAPPER.writer();
+    private static final ObjectWriter PRETTY = MAPPER.writerWithDefaultPrettyPrinter();
+
+    private static final CharacterEscapes CANONICAL_ESCAPES = new CanonicalEscapes();
+
+    private Json()
+    {
+    }
+
+    /**
+     * The factory for streaming parsers and generators. Generators created by it can write any value
+     * the codec can
+     *
+     * @return The shared factory, which must not be reconfigured
+     */
+    public static JsonFactory factory()
+    {
+        return MAPPER.getFactory();
+    }
+
+    /**
+     * Reads a JSON object of string values, such as the input of /save
+     *
+     * @param input The JSON object
+     * @return The values by name
+     * @throws IOException The input could not be read or is not a JSON object
+     */
+    public static HashMap<String, String> readStrings(InputStream input) throws IOException
+    {
+        return MAPPER.readValue(input, STRING_MAP);
+    }
+
+    /**
+     * Reads a JSON object of string values, such as the input of /save
+     *
+     * @param json The JSON object
+     * @return The values by name
+     * @throws IOException The input is not a JSON object
+     */
+    public static HashMap<String, String> readStrings(String json) throws IOException
+    {
+        return MAPPER.readValue(json, STRING_MAP);
+    }
+
+    /**
+     * Reads any JSON document, such as a {@link CurrencySpec}
+     *
+     * @param input The JSON document
+     * @return The document as a tree
+     * @throws IOException The input could not be read or is not JSON
+     */
+    static JsonNode readTree(InputStream input) throws IOException
+    {
+        return MAPPER.readTree(input);
+    }
+
+    /**
+     * Serializes a value compactly
+     *
+     * @param value The value
+     * @return The JSON
+     * @throws IOException The value cannot be serialized
+     */
+    public static String write(Object value) throws IOException
+    {
+        return write(value, false);
+    }
+
+    /**
+     * Serializes a value
+     *
+     * @param value  The value
+     * @param pretty True to indent the JSON for people to read
+     * @return The JSON
+     * @throws IOException The value cannot be serialized
+     */
+    public static String write(Object value, boolean pretty) throws IOException
+    {
+        return (pretty ? PRETTY : COMPACT).writeValueAsString(value);
+    }
+
+    /**
+     * Serializes a value straight into an output, without building the JSON in memory first.
+     * The output is left open
+     *
+     * @param output Where to write the JSON, as UTF-8
+     * @param value  The value
+     * @param pretty True to indent the JSON for people to read
+     * @throws IOException Error writing the JSON
+     */
+    public static void write(OutputStream output, Object value, boolean pretty) throws IOException
+    {
+        try (JsonGenerator generator = factory().createGenerator(output))
+        {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            (pretty ? PRETTY : COMPACT).writeValue(generator, value);
+        }
+    }
+
+    /**
+     * Serializes the input fields of a coin in the form its id is hashed from.
+     * <p>
+     * The bytes must never change, or the ids of new coins would no longer match those of the
+     * coins already minted. Each field is an object whose keys are always in the same order, name,
+     * label, validity and then value, with the label and the value left out when they are null.
+     * Strings are escaped as they were when the first coins were minted: besides what JSON requires,
+     * &lt; &gt; &amp; = ' U+2028 and U+2029 are written as \\u escapes, with lower case hex digits.
+     *
+     * @param output   Where to write the JSON array of the fields. It is not closed
+     * @param fields   The fields
+     * @param values   The input value of each field
+     * @param validity Whether each field is valid
+     * @throws IOException Error writing to the output
+     */
+    static void writeCanonicalFields(Writer output, Field[] fields, String[] values, boolean[] validity)
+            throws IOException
+    {
+        /*
+         * Always through a Writer: the UTF-8 generator escapes characters beyond U+FFFF
+         * under custom escapes, which the canonical form never did
+         */
+        try (JsonGenerator generator = factory().createGenerator(output)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET))
+        {
+            generator.setCharacterEscapes(CANONICAL_ESCAPES);
+
+            generator.writeStartArray();
+
+            for (int ordinal = 0; ordinal < fields.length; ordinal++)
+            {
+                generator.writeStartObject();
+                generator.writeStringField("name", fields[ordinal].getName());
+
+                if (fields[ordinal].getLabel() != null)
+                {
+                    generator.writeStringField("label", fields[ordinal].getLabel());
+                }
+
+                generator.writeBooleanField("validity", validity[ordinal]);
+
+                if (values[ordinal] != null)
+                {
+                    generator.writeStringField("value", values[ordinal]);
+                }
+
+                generator.writeEndObject();
+            }
+
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * The escaping of the canonical form
+     */
+    private static final class CanonicalEscapes extends CharacterEscapes
+    {
+        private static final long serialVersionUID = 1L;
+
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private final int[] asciiEscapes;
+
+        CanonicalEscapes()
+        {
+            asciiEscapes = standardAsciiEscapesForJSON();
+
+            // Everything but \" and \\ goes through getEscapeSequence, so the hex digits are lower case
+            for (int c = 0; c < 0x20; c++)
+            {
+                asciiEscapes[c] = ESCAPE_CUSTOM;
+            }
+
+            for (char c : "<>&='".toCharArray())
+            {
+                asciiEscapes[c] = ESCAPE_CUSTOM;
+            }
+        }
+
+        @Override
+        public int[] getEscapeCodesForAscii()
+        {
+            return asciiEscapes;
+        }
+
+        @Override
+        public SerializableString getEscapeSequence(int c)
+        {
+            switch (c)
+            {
+                case '\t':
+                    return new SerializedString("\\t");
+                case '\b':
+                    return new SerializedString("\\b");
+                case '\n':
+                    return new SerializedString("\\n");
+                case '\r':
+                    return new SerializedString("\\r");
+                case '\f':
+                    return new SerializedString("\\f");
+                case '\u2028':
+                case '\u2029':
+                    return unicodeEscape(c);
+                default:
+                    return c < 0x80 ? unicodeEscape(c) : null;
+            }
+        }
+
+        private static SerializableString unicodeEscape(int c)
+        {
+            return new SerializedString(new String(new char[]{
+                    '\\', 'u', HEX[c >> 12 & 0xF], HEX[c >> 8 & 0xF], HEX[c >> 4 & 0xF], HEX[c & 0xF]
+            }));
+        }
+    }
+}
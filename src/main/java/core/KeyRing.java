@@ -0,0 +1,275 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.security.*;
+import java.security.interfaces.RSAKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static core.LockSmith.CIPHER_ALGORITHM;
+import static java.nio.file.Files.readAllBytes;
+
+/**
+ * Process-wide holder of the parsed encryption keys.
+ * <p>
+ * The key files are read and parsed once and the resulting keys are shared by
+ * every request. When the keys are rotated on disk, call {@link #reload()} or
+ * start {@link #watch()} so that the new keys are picked up without a restart.
+ * The keys themselves are created by the {@link LockSmith}.
+ */
+public final class KeyRing
+{
+    private static final Logger LOGGER = Logger.getLogger(KeyRing.class.getName());
+
+    // How long to wait after a key file changes before reading the keys
+    private static final long SETTLE_MILLISECONDS = 500;
+
+    /**
+     * An immutable set of parsed keys
+     */
+    static final class Keys
+    {
+        final PrivateKey privateKey;
+        final PublicKey publicKey;
+
+        // Null until the signing keys have been created
+        final PrivateKey signingKey;
+        final PublicKey verifyingKey;
+
+        private Keys(PrivateKey privateKey, PublicKey publicKey, PrivateKey signingKey, PublicKey verifyingKey)
+        {
+            this.privateKey = privateKey;
+            this.publicKey = publicKey;
+            this.signingKey = signingKey;
+            this.verifyingKey = verifyingKey;
+        }
+    }
+
+    private static volatile Keys keys;
+
+    private static Thread watcher;
+
+    private KeyRing()
+    {
+    }
+
+    /**
+     * The keys currently in use, loaded from disk on first use
+     *
+     * @return The current keys
+     * @throws IOException              Input/output exception arising from reading the key files
+     * @throws InvalidKeySpecException  The key files not being valid key files
+     * @throws NoSuchAlgorithmException An exception with the CIPHER_ALGORITHM in place
+     */
+    static Keys current() throws IOException, InvalidKeySpecException, NoSuchAlgorithmException
+    {
+        Keys current = keys;
+
+        if (current == null)
+        {
+            synchronized (KeyRing.class)
+            {
+                if (keys == null)
+                {
+                    keys = load();
+                }
+
+                current = keys;
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Whether the keys are in place and can be used. Until they are, nothing can be minted or shown
+     *
+     * @return True once the keys have been loaded
+     */
+    public static boolean isReady()
+    {
+        if (keys != null)
+        {
+            return true;
+        }
+
+        if (!new File(LockSmith.PRIVATE_KEY).exists() || !new File(LockSmith.PUBLIC_KEY).exists())
+        {
+            // Still being generated by the LockSmith
+            return false;
+        }
+
+        try
+        {
+            current();
+
+            return true;
+        }
+        catch (IOException | GeneralSecurityException | IllegalStateException ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Re-reads the key files, replacing the keys in use once all of them have been parsed successfully
+     *
+     * @throws IOException              Input/output exception arising from reading the key files
+     * @throws InvalidKeySpecException  The key files not being valid key files
+     * @throws NoSuchAlgorithmException An exception with the CIPHER_ALGORITHM in place
+     */
+    public static synchronized void reload() throws IOException, InvalidKeySpecException, NoSuchAlgorithmException
+    {
+        keys = load();
+
+        LOGGER.info("Encryption keys loaded");
+    }
+
+    /**
+     * Watches the key folder and reloads the keys whenever the key files change
+     *
+     * @throws IOException Error registering the watch on the key folder
+     */
+    public static synchronized void watch() throws IOException
+    {
+        if (watcher != null)
+        {
+            return;
+        }
+
+        Path folder = new File(LockSmith.PRIVATE_KEY).getAbsoluteFile().getParentFile().toPath();
+        Files.createDirectories(folder);
+
+        WatchService watchService = folder.getFileSystem().newWatchService();
+
+        folder.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY
+        );
+
+        watcher = new Thread(() -> watchLoop(watchService), "key-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Waits for changes to the key files and reloads the keys
+     *
+     * @param watchService The watch on the key folder
+     */
+    private static void watchLoop(WatchService watchService)
+    {
+        List<String> keyNames = Arrays.asList(
+                new File(LockSmith.PRIVATE_KEY).getName(),
+                new File(LockSmith.PUBLIC_KEY).getName(),
+                new File(LockSmith.SIGNING_KEY).getName(),
+                new File(LockSmith.VERIFYING_KEY).getName()
+        );
+
+        while (true)
+        {
+            WatchKey key;
+
+            try
+            {
+                key = watchService.take();
+            }
+            catch (InterruptedException | ClosedWatchServiceException ex)
+            {
+                return;
+            }
+
+            boolean changed = false;
+
+            for (WatchEvent<?> event : key.pollEvents())
+            {
+                String fileName = String.valueOf(event.context());
+
+                if (keyNames.contains(fileName))
+                {
+                    changed = true;
+                }
+            }
+
+            if (changed)
+            {
+                try
+                {
+                    /*
+                     * Both files are usually rewritten one after the other. Give the rotation
+                     * a moment to finish so that a matching pair is read
+                     */
+                    Thread.sleep(SETTLE_MILLISECONDS);
+
+                    reload();
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+                catch (IOException | GeneralSecurityException | IllegalStateException ex)
+                {
+                    /*
+                     * Most likely caught halfway through a rotation. Keep the current keys
+                     * and try again on the next change
+                     */
+                    LOGGER.log(Level.WARNING, "Could not reload the encryption keys", ex);
+                }
+            }
+
+            if (!key.reset())
+            {
+                LOGGER.warning("The key folder is no longer being watched");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads and parses the key files
+     *
+     * @return The parsed keys
+     * @throws IOException              Input/output exception arising from reading the key files
+     * @throws InvalidKeySpecException  The key files not being valid key files
+     * @throws NoSuchAlgorithmException An exception with the CIPHER_ALGORITHM in place
+     */
+    private static Keys load() throws IOException, InvalidKeySpecException, NoSuchAlgorithmException
+    {
+        KeyFactory kf = KeyFactory.getInstance(CIPHER_ALGORITHM);
+
+        byte[] privateBytes = readAllBytes(new File(LockSmith.PRIVATE_KEY).toPath());
+        PrivateKey privateKey = kf.generatePrivate(new PKCS8EncodedKeySpec(privateBytes));
+
+        byte[] publicBytes = readAllBytes(new File(LockSmith.PUBLIC_KEY).toPath());
+        PublicKey publicKey = kf.generatePublic(new X509EncodedKeySpec(publicBytes));
+
+        if (privateKey instanceof RSAKey && publicKey instanceof RSAKey
+                && !((RSAKey) privateKey).getModulus().equals(((RSAKey) publicKey).getModulus()))
+        {
+            throw new IllegalStateException("The private and public key files do not belong to the same key pair");
+        }
+
+        PrivateKey signingKey = null;
+        PublicKey verifyingKey = null;
+
+        File signingKeyFile = new File(LockSmith.SIGNING_KEY);
+        File verifyingKeyFile = new File(LockSmith.VERIFYING_KEY);
+
+        if (signingKeyFile.exists() && verifyingKeyFile.exists())
+        {
+            KeyFactory signingKf = KeyFactory.getInstance(LockSmith.SIGNING_ALGORITHM);
+
+            signingKey = signingKf.generatePrivate(new PKCS8EncodedKeySpec(readAllBytes(signingKeyFile.toPath())));
+            verifyingKey = signingKf.generatePublic(new X509EncodedKeySpec(readAllBytes(verifyingKeyFile.toPath())));
+        }
+
+        return new Keys(privateKey, publicKey, signingKey, verifyingKey);
+    }
+}
@@ -3,107 +3,210 @@ package core;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.*;
-
-class LockSmith
+import java.security.spec.ECGenParameterSpec;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provisions the encryption and signing keys.
+ * <p>
+ * Generating a large RSA key pair takes minutes, so it never happens on the request
+ * path. The application calls {@link #provisionInBackground()} at startup and reports
+ * itself as not ready until the keys are in place (see {@link KeyRing#isReady()}).
+ * Keys can also be generated ahead of time, for instance while building an image, with
+ * <pre>
+ * java -cp &lt;classpath&gt; core.LockSmith [--size 4096] [--force]
+ * </pre>
+ * The size and algorithm of the encryption keys are read from the {@value #KEY_SIZE_PROPERTY}
+ * and {@value #KEY_ALGORITHM_PROPERTY} system properties. The algorithm is also what the keys
+ * are read and used with, so it has no option of its own: set the property, with the same value,
+ * both here and for the application. Only RSA supports encrypting with the private key in the
+ * standard providers.
+ */
+public final class LockSmith
 {
+    private static final Logger LOGGER = Logger.getLogger(LockSmith.class.getName());
 
-    private KeyPairGenerator keyGen;
-    private PrivateKey privateKey;
-    private PublicKey publicKey;
+    public static final String KEY_SIZE_PROPERTY = "keys.size";
+    public static final String KEY_ALGORITHM_PROPERTY = "keys.algorithm";
 
     static final String PRIVATE_KEY = "keys/private.key";
     static final String PUBLIC_KEY = "keys/public.key";
-    static final String CIPHER_ALGORITHM = "RSA";
+    static final String DEFAULT_CIPHER_ALGORITHM = "RSA";
+    static final String CIPHER_ALGORITHM = System.getProperty(KEY_ALGORITHM_PROPERTY, DEFAULT_CIPHER_ALGORITHM);
+    static final int KEY_SIZE = Integer.getInteger(KEY_SIZE_PROPERTY, 9999);
+
+    // Keys used to sign coins, see Notary
+    static final String SIGNING_KEY = "keys/signing.key";
+    static final String VERIFYING_KEY = "keys/verifying.key";
+    static final String SIGNING_ALGORITHM = "EC";
+    static final String SIGNING_CURVE = "secp256r1";
+
+    private LockSmith()
+    {
+    }
 
     /**
-     * Instantiate the LockSmith
+     * Generates the keys from the command line, then exits
      *
-     * @throws NoSuchAlgorithmException Missing Cipher algorithm
+     * @param args Optionally --size followed by the key size, and --force to replace existing keys
+     * @throws Exception Any error while generating or writing the keys
      */
-    LockSmith() throws NoSuchAlgorithmException
+    public static void main(String[] args) throws Exception
     {
-        int KEY_SIZE = 9999;
+        int keySize = KEY_SIZE;
+        boolean force = false;
 
-        this.keyGen = KeyPairGenerator.getInstance(CIPHER_ALGORITHM);
-        this.keyGen.initialize(KEY_SIZE);
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--size":
+                    if (i + 1 == args.length)
+                    {
+                        exitWithUsage();
+                    }
+
+                    try
+                    {
+                        keySize = Integer.parseInt(args[++i]);
+                    }
+                    catch (NumberFormatException ex)
+                    {
+                        exitWithUsage();
+                    }
+                    break;
+                case "--force":
+                    force = true;
+                    break;
+                default:
+                    exitWithUsage();
+            }
+        }
 
-        File privateKeyFile = new File(PRIVATE_KEY);
-        File publicKeyFile = new File(PUBLIC_KEY);
+        provision(CIPHER_ALGORITHM, keySize, force);
 
-        if (!publicKeyFile.exists() || !privateKeyFile.exists())
-        {
-            /*
-             * Create the necessary file directory structures to hold the keys
-             */
-            publicKeyFile.getParentFile().mkdirs();
-            privateKeyFile.getParentFile().mkdirs();
+        System.out.println(String.format("Keys are in place in %s", new File(PRIVATE_KEY).getAbsoluteFile().getParent()));
+    }
 
+    /**
+     * Explains the command line, then exits
+     */
+    private static void exitWithUsage()
+    {
+        System.err.println("Usage: LockSmith [--size <bits>] [--force]");
+        System.err.println(String.format("The algorithm of the keys is set with -D%s=<name>, %s by default",
+                KEY_ALGORITHM_PROPERTY, DEFAULT_CIPHER_ALGORITHM));
+        System.exit(2);
+    }
+
+    /**
+     * Creates any missing keys on a background thread, then loads them into the {@link KeyRing}.
+     * Returns immediately
+     *
+     * @return The thread doing the work
+     */
+    public static Thread provisionInBackground()
+    {
+        Thread provisioner = new Thread(() ->
+        {
             try
             {
-                createKeys();
-                writeToFile(PUBLIC_KEY, getPublicKey().getEncoded());
-                writeToFile(PRIVATE_KEY, getPrivateKey().getEncoded());
+                provision(CIPHER_ALGORITHM, KEY_SIZE, false);
+                KeyRing.reload();
             }
-            catch (IOException ex)
+            catch (IOException | GeneralSecurityException | IllegalStateException ex)
             {
-                ex.printStackTrace();
-
                 /*
-                 * We would not be able to encrypt the data. There is no need to proceed
+                 * We would not be able to encrypt the data. The application stays not ready
                  */
-                System.exit(1);
+                LOGGER.log(Level.SEVERE, "Could not provision the encryption keys", ex);
             }
-        }
-    }
+        }, "key-provisioner");
 
-    /**
-     * Create the private and public keys, storing them into local files
-     */
-    private void createKeys()
-    {
-        System.out.println("Generating first time encryption keys. This will take a while...");
-        // TODO: Once the keys are generated, deleting them causes a decryption error. Fix this
+        provisioner.setDaemon(true);
+        provisioner.start();
 
-        KeyPair pair = this.keyGen.generateKeyPair();
-        this.privateKey = pair.getPrivate();
-        this.publicKey = pair.getPublic();
+        return provisioner;
     }
 
     /**
-     * Extracts the private key from the key pair
+     * Creates any missing keys with the configured size and algorithm
      *
-     * @return The private key
+     * @throws GeneralSecurityException Error generating the keys
+     * @throws IOException              Exception during the file writing operation
      */
-    private PrivateKey getPrivateKey()
+    public static void provision() throws GeneralSecurityException, IOException
     {
-        return this.privateKey;
+        provision(CIPHER_ALGORITHM, KEY_SIZE, false);
     }
 
     /**
-     * Extracts the public key from the key pair
+     * Creates the encryption and signing keys, storing them into local files
      *
-     * @return The public key
+     * @param algorithm The algorithm of the encryption keys
+     * @param keySize   The size of the encryption keys
+     * @param force     True to replace keys that already exist
+     * @throws GeneralSecurityException Error generating the keys
+     * @throws IOException              Exception during the file writing operation
      */
-    private PublicKey getPublicKey()
+    static synchronized void provision(String algorithm, int keySize, boolean force)
+            throws GeneralSecurityException, IOException
     {
-        return this.publicKey;
+        if (force || !new File(PUBLIC_KEY).exists() || !new File(PRIVATE_KEY).exists())
+        {
+            LOGGER.info(String.format("Generating %d-bit %s encryption keys. This will take a while...", keySize, algorithm));
+
+            KeyPairGenerator keyGen = KeyPairGenerator.getInstance(algorithm);
+            keyGen.initialize(keySize);
+
+            KeyPair pair = keyGen.generateKeyPair();
+
+            // TODO: Once the keys are generated, deleting them causes a decryption error. Fix this
+            writeToFile(PUBLIC_KEY, pair.getPublic().getEncoded());
+            writeToFile(PRIVATE_KEY, pair.getPrivate().getEncoded());
+        }
+
+        if (force || !new File(SIGNING_KEY).exists() || !new File(VERIFYING_KEY).exists())
+        {
+            /*
+             * Unlike the encryption keys, these take milliseconds to generate
+             */
+            KeyPairGenerator signingKeyGen = KeyPairGenerator.getInstance(SIGNING_ALGORITHM);
+            signingKeyGen.initialize(new ECGenParameterSpec(SIGNING_CURVE));
+
+            KeyPair pair = signingKeyGen.generateKeyPair();
+
+            writeToFile(VERIFYING_KEY, pair.getPublic().getEncoded());
+            writeToFile(SIGNING_KEY, pair.getPrivate().getEncoded());
+        }
     }
 
     /**
-     * Write data to file
+     * Write data to file. The data is written next to the file and then moved into place,
+     * so that a reader never sees a half-written key
+     *
      * @param path The file into which the data is to be written
      * @param data The data to be written
      * @throws IOException Exception during the file writing operation
      */
-    private void writeToFile(String path, byte[] data) throws IOException
+    private static void writeToFile(String path, byte[] data) throws IOException
     {
         File file = new File(path);
         file.getParentFile().mkdirs();
 
-        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        File partial = new File(path + ".partial");
+
+        FileOutputStream fileOutputStream = new FileOutputStream(partial);
         fileOutputStream.write(data);
         fileOutputStream.flush();
+        fileOutputStream.getFD().sync();
         fileOutputStream.close();
+
+        Files.move(partial.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 }
@@ -0,0 +1,1129 @@
+package core;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the coins in append-only, memory-mapped segment files, with every coin's location held in memory.
+ * <p>
+ * Coins are written once and read by serial number, which is what a log does best: writing a coin
+ * is a copy into the mapped active segment, and reading one is a copy out of a mapped segment at
+ * the offset held by the index, with no system call, page cache lookup or SQL in between. The
+ * serial numbers, countries and minting days of all the coins are kept in memory, in a hash index
+ * for lookups and in sorted sets for the audit scans.
+ * <p>
+ * When the writes reach the disk is set by the {@link Sync} policy. Every record carries a sequence
+ * number and a checksum, so the log can be replayed in any order on startup and a record torn by a
+ * crash is cut off, along with everything after it in its segment. A segment is sealed once the
+ * next record no longer fits. Once the sealed segments are mostly made of replaced coins and
+ * revocations, the coins still in use are copied into fresh segments and the old ones are deleted.
+ */
+final class LogVault implements CoinVault
+{
+    private static final Logger LOGGER = Logger.getLogger(LogVault.class.getName());
+
+    /**
+     * When the coins written to the log are synced to the disk
+     */
+    enum Sync
+    {
+        // Every coin is synced on its own. The slowest, for when batches are not trusted
+        WRITE,
+
+        // Every batch of the group commit is synced once before any of its coins is reported saved
+        BATCH,
+
+        // Syncs run in the background at a fixed interval. Coins are reported saved before they are
+        // synced, so a crash of the machine may lose the coins of the last interval
+        INTERVAL
+    }
+
+    // The size at which the active segment is sealed and a new one started
+    private static final long SEGMENT_BYTES = 64L * 1024L * 1024L;
+
+    // Sealed segments are compacted once less than this share of them is still in use
+    private static final double LIVE_RATIO = 0.5;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // Compacted segments only get their final name once they are complete
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    private static final byte PUT = 1;
+    private static final byte REVOKE = 2;
+
+    // The length and checksum in front of every record
+    private static final int HEADER_BYTES = 8;
+
+    // Sorts the secondary keys by their first part, then by serial number
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * A record of the log
+     */
+    private static final class Record
+    {
+        private final byte type;
+        private final long sequence;
+        private final String serialNumber;
+        private final String country;
+        private final String validFrom;
+        private final boolean valid;
+        private final byte[] value;
+
+        private Record(byte type, long sequence, String serialNumber, String country, String validFrom,
+                       boolean valid, byte[] value)
+        {
+            this.type = type;
+            this.sequence = sequence;
+            this.serialNumber = serialNumber;
+            this.country = country;
+            this.validFrom = validFrom;
+            this.valid = valid;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Where the latest version of a coin is, and what is known about it without reading it
+     */
+    private static final class Entry
+    {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final long sequence;
+        private final String country;
+        private final String validFrom;
+        private final boolean valid;
+
+        private Entry(int segment, long offset, int length, long sequence, String country, String validFrom,
+                      boolean valid)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.sequence = sequence;
+            this.country = country;
+            this.validFrom = validFrom;
+            this.valid = valid;
+        }
+
+        private CoinRecord toCoinRecord(String serialNumber)
+        {
+            return new CoinRecord(serialNumber, country, validFrom, valid);
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Country, then serial number
+    private final ConcurrentSkipListSet<String> byCountry = new ConcurrentSkipListSet<>();
+
+    // Minting day, then serial number
+    private final ConcurrentSkipListSet<String> byValidFrom = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentSkipListSet<String> revoked = new ConcurrentSkipListSet<>();
+
+    // Every segment by id, mapped into memory. A mapping outlives its file, so readers
+    // still on a segment deleted by a compaction are not disturbed
+    private final ConcurrentHashMap<Integer, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    private final Sync sync;
+
+    // Syncs the active segment under the INTERVAL policy, null otherwise
+    private final ScheduledExecutorService syncer;
+
+    // The mapping of the active segment, for the syncer
+    private volatile MappedByteBuffer active;
+
+    // Guards everything below, and every write to the log
+    private final Object lock = new Object();
+
+    // The bytes of each segment still holding the latest version of a coin
+    private final HashMap<Integer, Long> liveBytes = new HashMap<>();
+
+    // The bytes written to each segment
+    private final HashMap<Integer, Long> segmentSizes = new HashMap<>();
+
+    // Revocations replayed before their coin, applied once the whole log has been read
+    private final HashMap<String, Long> orphanRevocations = new HashMap<>();
+
+    private int activeSegment;
+    private int nextSegment;
+    private long nextSequence;
+
+    private final CoinWriter writer;
+
+    /**
+     * Opens the log, creating it if it is missing and replaying it into memory otherwise
+     *
+     * @param directory          The folder that holds the segments
+     * @param batchSize          The most coins to write in one batch
+     * @param windowMillis       How long the writer waits to fill a batch
+     * @param sync               When the writes are synced to the disk
+     * @param syncIntervalMillis How often to sync under the INTERVAL policy
+     * @throws IOException Error reading the log
+     */
+    LogVault(String directory, int batchSize, long windowMillis, Sync sync, long syncIntervalMillis)
+            throws IOException
+    {
+        this(directory, batchSize, windowMillis, sync, syncIntervalMillis, SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the log, creating it if it is missing and replaying it into memory otherwise
+     *
+     * @param directory          The folder that holds the segments
+     * @param batchSize          The most coins to write in one batch
+     * @param windowMillis       How long the writer waits to fill a batch
+     * @param sync               When the writes are synced to the disk
+     * @param syncIntervalMillis How often to sync under the INTERVAL policy
+     * @param segmentBytes       The size of a segment
+     * @throws IOException Error reading the log
+     */
+    LogVault(String directory, int batchSize, long windowMillis, Sync sync, long syncIntervalMillis,
+             long segmentBytes) throws IOException
+    {
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.sync = sync;
+
+        Files.createDirectories(this.directory);
+
+        replay();
+
+        if (segments.isEmpty())
+        {
+            createSegment();
+        }
+        else
+        {
+            // Carry on appending to the latest segment
+            activeSegment = Collections.max(segments.keySet());
+
+            long written = segmentSizes.get(activeSegment);
+
+            active = map(segmentPath(activeSegment), Math.max(written, segmentBytes), true);
+            segments.put(activeSegment, active);
+        }
+
+        if (sync == Sync.INTERVAL)
+        {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable ->
+            {
+                Thread thread = new Thread(runnable, "vault-sync");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+
+            syncer.scheduleWithFixedDelay(this::syncActive, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            syncer = null;
+        }
+
+        writer = new CoinWriter(this::append, batchSize, windowMillis);
+    }
+
+    @Override
+    public void close()
+    {
+        writer.close();
+
+        if (syncer != null)
+        {
+            syncer.shutdown();
+        }
+
+        synchronized (lock)
+        {
+            active.force();
+
+            // The mappings are released once they are no longer reachable
+            segments.clear();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> save(String serialNumber, String country, byte[] value)
+    {
+        return writer.submit(serialNumber, country, value);
+    }
+
+    @Override
+    public boolean mightContain(String serialNumber)
+    {
+        // The index is exact
+        return entries.containsKey(serialNumber);
+    }
+
+    @Override
+    public byte[] get(String serialNumber)
+    {
+        Entry entry = entries.get(serialNumber);
+
+        if (entry == null || !entry.valid)
+        {
+            return null;
+        }
+
+        try
+        {
+            Record record = read(serialNumber);
+
+            return record == null ? null : record.value;
+        }
+        catch (IOException ex)
+        {
+            ex.printStackTrace();
+
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String serialNumber)
+    {
+        Entry entry = entries.get(serialNumber);
+
+        return entry != null && !entry.valid;
+    }
+
+    @Override
+    public boolean revoke(String serialNumber)
+    {
+        synchronized (lock)
+        {
+            Entry entry = entries.get(serialNumber);
+
+            if (entry == null)
+            {
+                return false;
+            }
+
+            if (!entry.valid)
+            {
+                return true;
+            }
+
+            long sequence = nextSequence;
+
+            try
+            {
+                write(encode(new Record(REVOKE, sequence, serialNumber, null, null, false, null)));
+            }
+            catch (IOException ex)
+            {
+                ex.printStackTrace();
+
+                return false;
+            }
+
+            if (sync != Sync.INTERVAL)
+            {
+                active.force();
+            }
+
+            nextSequence++;
+
+            entries.put(serialNumber, new Entry(entry.segment, entry.offset, entry.length, sequence,
+                    entry.country, entry.validFrom, false));
+            revoked.add(serialNumber);
+
+            return true;
+        }
+    }
+
+    @Override
+    public CoinRecord scanByCountry(String country, String after, int pageSize, Consumer<CoinRecord> coins)
+    {
+        String prefix = country + SEPARATOR;
+
+        CoinRecord last = null;
+        int count = 0;
+
+        for (String key : byCountry.tailSet(prefix + after, false))
+        {
+            if (count == pageSize || !key.startsWith(prefix))
+            {
+                break;
+            }
+
+            String serialNumber = key.substring(prefix.length());
+
+            last = entries.get(serialNumber).toCoinRecord(serialNumber);
+            coins.accept(last);
+            count++;
+        }
+
+        return count == pageSize ? last : null;
+    }
+
+    @Override
+    public CoinRecord scanByValidFrom(String from, String to, String afterDay, String afterCoin, int pageSize,
+                                      Consumer<CoinRecord> coins)
+    {
+        String start = from + SEPARATOR;
+        String after = afterDay + SEPARATOR + afterCoin;
+
+        NavigableSet<String> keys = after.compareTo(start) > 0
+                ? byValidFrom.tailSet(after, false)
+                : byValidFrom.tailSet(start, true);
+
+        CoinRecord last = null;
+        int count = 0;
+
+        for (String key : keys)
+        {
+            int separator = key.indexOf(SEPARATOR);
+
+            if (count == pageSize || key.substring(0, separator).compareTo(to) > 0)
+            {
+                break;
+            }
+
+            String serialNumber = key.substring(separator + 1);
+
+            last = entries.get(serialNumber).toCoinRecord(serialNumber);
+            coins.accept(last);
+            count++;
+        }
+
+        return count == pageSize ? last : null;
+    }
+
+    @Override
+    public CoinRecord scanRevoked(String after, int pageSize, Consumer<CoinRecord> coins)
+    {
+        CoinRecord last = null;
+        int count = 0;
+
+        for (String serialNumber : revoked.tailSet(after, false))
+        {
+            if (count == pageSize)
+            {
+                break;
+            }
+
+            last = entries.get(serialNumber).toCoinRecord(serialNumber);
+            coins.accept(last);
+            count++;
+        }
+
+        return count == pageSize ? last : null;
+    }
+
+    /**
+     * Writes a batch of coins into the log, syncing it as the policy says. Runs on the writer thread
+     *
+     * @param coins The coins to be written
+     * @return True if the coins were written, false otherwise
+     */
+    private boolean append(List<CoinWriter.PendingCoin> coins)
+    {
+        synchronized (lock)
+        {
+            String today = LocalDate.now(ZoneOffset.UTC).toString();
+
+            // The coins of the batch, in case a coin appears twice
+            HashMap<String, Entry> batch = new HashMap<>();
+
+            List<Record> records = new ArrayList<>(coins.size());
+            List<byte[]> encoded = new ArrayList<>(coins.size());
+
+            for (CoinWriter.PendingCoin coin : coins)
+            {
+                Entry existing = batch.containsKey(coin.serialNumber)
+                        ? batch.get(coin.serialNumber)
+                        : entries.get(coin.serialNumber);
+
+                // Saving a coin again keeps the day it was first minted and whether it was revoked
+                String validFrom = existing == null ? today : existing.validFrom;
+                boolean valid = existing == null || existing.valid;
+
+                String country = coin.country == null ? "" : coin.country.intern();
+
+                Record record = new Record(PUT, nextSequence + records.size(), coin.serialNumber,
+                        country, validFrom, valid, coin.value);
+
+                byte[] bytes = encode(record);
+
+                if (bytes.length > segmentBytes)
+                {
+                    LOGGER.severe(String.format("Coin %s does not fit in a segment", coin.serialNumber));
+
+                    return false;
+                }
+
+                records.add(record);
+                encoded.add(bytes);
+
+                batch.put(coin.serialNumber, new Entry(-1, 0, 0, record.sequence, record.country, validFrom, valid));
+            }
+
+            int[] segmentOf = new int[records.size()];
+            long[] offsetOf = new long[records.size()];
+
+            try
+            {
+                for (int i = 0; i < records.size(); i++)
+                {
+                    offsetOf[i] = write(encoded.get(i));
+                    segmentOf[i] = activeSegment;
+
+                    if (sync == Sync.WRITE)
+                    {
+                        active.force();
+                    }
+                }
+            }
+            catch (IOException ex)
+            {
+                /*
+                 * The coins written so far are not reported saved, although they may be found again
+                 * when the log is replayed. Saving them again is harmless
+                 */
+                LOGGER.log(Level.SEVERE, String.format("Could not write a batch of %d coins", coins.size()), ex);
+
+                return false;
+            }
+
+            if (sync == Sync.BATCH)
+            {
+                active.force();
+            }
+
+            nextSequence += records.size();
+
+            for (int i = 0; i < records.size(); i++)
+            {
+                publish(records.get(i), segmentOf[i], offsetOf[i], encoded.get(i).length);
+            }
+
+            compactIfWorthIt();
+
+            return true;
+        }
+    }
+
+    /**
+     * Copies a record into the active segment, sealing it and starting a new one first if the
+     * record does not fit. Called with the lock held
+     *
+     * @param bytes The record
+     * @return The offset at which the record was written
+     * @throws IOException Error starting a new segment
+     */
+    private long write(byte[] bytes) throws IOException
+    {
+        long start = segmentSizes.get(activeSegment);
+
+        if (start + bytes.length > active.capacity())
+        {
+            // Everything in a sealed segment is on the disk
+            active.force();
+
+            createSegment();
+            start = 0;
+        }
+
+        ByteBuffer target = active.duplicate();
+        target.position((int) start);
+        target.put(bytes);
+
+        segmentSizes.put(activeSegment, start + bytes.length);
+
+        return start;
+    }
+
+    /**
+     * Makes a record the latest version of its coin, if it is newer than the one known. Called
+     * with the lock held, or while the log is replayed
+     *
+     * @param record  The record
+     * @param segment The segment holding the record
+     * @param offset  The offset of the record in the segment
+     * @param length  The length of the record
+     */
+    private void publish(Record record, int segment, long offset, int length)
+    {
+        Entry existing = entries.get(record.serialNumber);
+
+        if (existing != null && existing.sequence >= record.sequence)
+        {
+            return;
+        }
+
+        if (record.type == REVOKE)
+        {
+            if (existing != null)
+            {
+                entries.put(record.serialNumber, new Entry(existing.segment, existing.offset, existing.length,
+                        record.sequence, existing.country, existing.validFrom, false));
+                revoked.add(record.serialNumber);
+            }
+            else
+            {
+                // Replaying a segment written before the one holding the coin, which a compaction can cause
+                orphanRevocations.merge(record.serialNumber, record.sequence, Math::max);
+            }
+
+            return;
+        }
+
+        if (existing != null)
+        {
+            liveBytes.merge(existing.segment, (long) -existing.length, Long::sum);
+        }
+
+        liveBytes.merge(segment, (long) length, Long::sum);
+
+        entries.put(record.serialNumber, new Entry(segment, offset, length, record.sequence, record.country,
+                record.validFrom, record.valid));
+
+        byCountry.add(record.country + SEPARATOR + record.serialNumber);
+        byValidFrom.add(record.validFrom + SEPARATOR + record.serialNumber);
+
+        if (record.valid)
+        {
+            revoked.remove(record.serialNumber);
+        }
+        else
+        {
+            revoked.add(record.serialNumber);
+        }
+    }
+
+    /**
+     * Reads the latest version of a coin
+     *
+     * @param serialNumber The id of the coin
+     * @return The record, or null if the coin is not stored
+     * @throws IOException The record is damaged
+     */
+    private Record read(String serialNumber) throws IOException
+    {
+        // A compaction may move the coin while it is being read. The index then points to its new place
+        for (int attempt = 0; ; attempt++)
+        {
+            Entry entry = entries.get(serialNumber);
+
+            if (entry == null)
+            {
+                return null;
+            }
+
+            MappedByteBuffer mapping = segments.get(entry.segment);
+
+            if (mapping == null)
+            {
+                if (attempt == 2)
+                {
+                    throw new IOException(String.format("The segment of coin %s is gone", serialNumber));
+                }
+
+                continue;
+            }
+
+            byte[] bytes = new byte[entry.length];
+
+            ByteBuffer source = mapping.duplicate();
+            source.position((int) entry.offset);
+            source.get(bytes);
+
+            Record record = decode(bytes);
+
+            if (record == null)
+            {
+                throw new IOException(String.format("The record of coin %s is damaged", serialNumber));
+            }
+
+            return record;
+        }
+    }
+
+    /**
+     * Compacts the sealed segments that are mostly replaced coins and revocations, once they
+     * hold a segment's worth of them. Called with the lock held, on the writer thread
+     */
+    private void compactIfWorthIt()
+    {
+        Set<Integer> selected = new HashSet<>();
+        long deadBytes = 0;
+
+        for (Map.Entry<Integer, Long> segment : segmentSizes.entrySet())
+        {
+            long live = liveBytes.getOrDefault(segment.getKey(), 0L);
+
+            if (segment.getKey() != activeSegment && live < segment.getValue() * LIVE_RATIO)
+            {
+                selected.add(segment.getKey());
+                deadBytes += segment.getValue() - live;
+            }
+        }
+
+        if (deadBytes < segmentBytes)
+        {
+            return;
+        }
+
+        try
+        {
+            compact(selected);
+        }
+        catch (IOException ex)
+        {
+            // Nothing has been replaced yet, so the log is as it was
+            LOGGER.log(Level.WARNING, "Could not compact the vault", ex);
+        }
+    }
+
+    /**
+     * Copies the coins still in use out of the given sealed segments into new ones, then deletes
+     * them. Called with the lock held
+     * <p>
+     * The revoked coins of the other sealed segments are copied as well, since their revocations
+     * may be in the segments being deleted. There are few of them.
+     *
+     * @param sealed The segments to compact
+     * @throws IOException Error writing the new segments
+     */
+    private void compact(Set<Integer> sealed) throws IOException
+    {
+        List<Path> partials = new ArrayList<>();
+        List<Integer> compacted = new ArrayList<>();
+
+        // The new place of each coin, published once every new segment is complete
+        LinkedHashMap<String, long[]> moved = new LinkedHashMap<>();
+        HashMap<String, Entry> movedFrom = new HashMap<>();
+
+        FileChannel output = null;
+        int outputSegment = -1;
+        long outputSize = 0;
+
+        try
+        {
+            for (Map.Entry<String, Entry> coin : entries.entrySet())
+            {
+                Entry entry = coin.getValue();
+
+                if (!sealed.contains(entry.segment) && (entry.valid || entry.segment == activeSegment))
+                {
+                    continue;
+                }
+
+                Record record = read(coin.getKey());
+
+                // Revocations are folded into the copy
+                byte[] bytes = encode(new Record(PUT, entry.sequence, coin.getKey(), entry.country,
+                        entry.validFrom, entry.valid, record.value));
+
+                if (output == null || (outputSize > 0 && outputSize + bytes.length > segmentBytes))
+                {
+                    if (output != null)
+                    {
+                        output.force(false);
+                        output.close();
+                    }
+
+                    outputSegment = nextSegment++;
+                    outputSize = 0;
+
+                    Path partial = partialPath(outputSegment);
+                    partials.add(partial);
+                    compacted.add(outputSegment);
+
+                    output = FileChannel.open(partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+                while (buffer.hasRemaining())
+                {
+                    output.write(buffer);
+                }
+
+                moved.put(coin.getKey(), new long[]{outputSegment, outputSize, bytes.length});
+                movedFrom.put(coin.getKey(), entry);
+
+                outputSize += bytes.length;
+            }
+
+            if (output != null)
+            {
+                output.force(false);
+                output.close();
+                output = null;
+            }
+
+            // Only now do the new segments count. Until then a crash leaves the sealed ones in place
+            for (int i = 0; i < compacted.size(); i++)
+            {
+                Files.move(partials.get(i), segmentPath(compacted.get(i)), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        catch (IOException ex)
+        {
+            if (output != null)
+            {
+                output.close();
+            }
+
+            for (Path partial : partials)
+            {
+                Files.deleteIfExists(partial);
+            }
+
+            throw ex;
+        }
+
+        for (Integer segment : compacted)
+        {
+            long size = Files.size(segmentPath(segment));
+
+            segments.put(segment, map(segmentPath(segment), size, false));
+            segmentSizes.put(segment, size);
+            liveBytes.put(segment, 0L);
+        }
+
+        for (Map.Entry<String, long[]> coin : moved.entrySet())
+        {
+            Entry entry = movedFrom.get(coin.getKey());
+            long[] place = coin.getValue();
+
+            entries.put(coin.getKey(), new Entry((int) place[0], place[1], (int) place[2], entry.sequence,
+                    entry.country, entry.validFrom, entry.valid));
+
+            liveBytes.merge(entry.segment, (long) -entry.length, Long::sum);
+            liveBytes.merge((int) place[0], place[2], Long::sum);
+        }
+
+        // Readers still on a sealed segment keep its mapping until they are done
+        for (Integer segment : sealed)
+        {
+            segments.remove(segment);
+            segmentSizes.remove(segment);
+            liveBytes.remove(segment);
+
+            Files.deleteIfExists(segmentPath(segment));
+        }
+
+        LOGGER.info(String.format("Compacted %d segments into %d", sealed.size(), compacted.size()));
+    }
+
+    /**
+     * Reads every segment into memory, cutting off any record torn by a crash
+     *
+     * @throws IOException Error reading the segments
+     */
+    private void replay() throws IOException
+    {
+        List<Integer> ids = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for (Path file : files)
+            {
+                String name = file.getFileName().toString();
+
+                if (name.endsWith(PARTIAL_SUFFIX))
+                {
+                    // An unfinished compaction. The segments it was copying are still there
+                    Files.delete(file);
+                }
+                else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                {
+                    ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+
+        Collections.sort(ids);
+
+        for (int segment : ids)
+        {
+            long size = replay(segment);
+
+            segments.put(segment, map(segmentPath(segment), size, false));
+            segmentSizes.put(segment, size);
+            liveBytes.putIfAbsent(segment, 0L);
+
+            nextSegment = Math.max(nextSegment, segment + 1);
+        }
+
+        for (Map.Entry<String, Long> revocation : orphanRevocations.entrySet())
+        {
+            Entry entry = entries.get(revocation.getKey());
+
+            if (entry != null && entry.sequence < revocation.getValue())
+            {
+                entries.put(revocation.getKey(), new Entry(entry.segment, entry.offset, entry.length,
+                        revocation.getValue(), entry.country, entry.validFrom, false));
+                revoked.add(revocation.getKey());
+            }
+        }
+
+        orphanRevocations.clear();
+    }
+
+    /**
+     * Reads a segment into memory, then cuts it off after its last intact record. That removes both
+     * a record torn by a crash and the unused space at the end of a segment that was still active
+     *
+     * @param segment The id of the segment
+     * @return The size of the intact part of the segment
+     * @throws IOException Error reading the segment
+     */
+    private long replay(int segment) throws IOException
+    {
+        Path path = segmentPath(segment);
+        long size = Files.size(path);
+
+        ByteBuffer data = map(path, size, false);
+
+        int offset = 0;
+        boolean damaged = false;
+
+        while (offset + HEADER_BYTES <= size)
+        {
+            int length = data.getInt(offset);
+
+            // Unused space
+            if (length == 0)
+            {
+                break;
+            }
+
+            if (length < 0 || offset + HEADER_BYTES + (long) length > size)
+            {
+                damaged = true;
+                break;
+            }
+
+            byte[] bytes = new byte[HEADER_BYTES + length];
+
+            ByteBuffer source = data.duplicate();
+            source.position(offset);
+            source.get(bytes);
+
+            Record record = decode(bytes);
+
+            if (record == null)
+            {
+                damaged = true;
+                break;
+            }
+
+            publish(record, segment, offset, bytes.length);
+
+            nextSequence = Math.max(nextSequence, record.sequence + 1);
+            offset += bytes.length;
+        }
+
+        if (offset < size)
+        {
+            if (damaged)
+            {
+                LOGGER.warning(String.format("Cutting off %s at %d, the rest is damaged", path, offset));
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                channel.truncate(offset);
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Syncs the active segment, under the INTERVAL policy
+     */
+    private void syncActive()
+    {
+        try
+        {
+            active.force();
+        }
+        catch (RuntimeException ex)
+        {
+            // Try again at the next interval rather than stop syncing altogether
+            LOGGER.log(Level.SEVERE, "Could not sync the vault", ex);
+        }
+    }
+
+    /**
+     * Starts an empty segment and makes it the active one. Called with the lock held, or while the
+     * log is opened
+     *
+     * @throws IOException Error creating the segment
+     */
+    private void createSegment() throws IOException
+    {
+        int segment = nextSegment++;
+
+        MappedByteBuffer mapping = map(segmentPath(segment), segmentBytes, true);
+
+        segments.put(segment, mapping);
+        segmentSizes.put(segment, 0L);
+        liveBytes.put(segment, 0L);
+
+        activeSegment = segment;
+        active = mapping;
+    }
+
+    /**
+     * Maps a segment into memory
+     *
+     * @param path     The segment
+     * @param size     The size to map. A writable segment is grown to this size
+     * @param writable Whether the segment is the active one
+     * @return The mapping
+     * @throws IOException Error mapping the segment
+     */
+    private static MappedByteBuffer map(Path path, long size, boolean writable) throws IOException
+    {
+        // The mapping stays valid once the channel is closed
+        try (FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ))
+        {
+            return channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private Path segmentPath(int segment)
+    {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private Path partialPath(int segment)
+    {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segment, PARTIAL_SUFFIX));
+    }
+
+    /**
+     * Lays out a record: its length and checksum, then its fields
+     *
+     * @param record The record
+     * @return The bytes of the record
+     */
+    private static byte[] encode(Record record)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+        try (DataOutputStream output = new DataOutputStream(bytes))
+        {
+            output.writeLong(0); // The length and checksum, filled in below
+            output.writeByte(record.type);
+            output.writeLong(record.sequence);
+            output.writeUTF(record.serialNumber);
+
+            if (record.type == PUT)
+            {
+                output.writeUTF(record.country);
+                output.writeUTF(record.validFrom);
+                output.writeBoolean(record.valid);
+
+                output.writeInt(record.value.length);
+                output.write(record.value);
+            }
+        }
+        catch (IOException ex)
+        {
+            // Not possible in memory
+            throw new UncheckedIOException(ex);
+        }
+
+        byte[] encoded = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(encoded, HEADER_BYTES, encoded.length - HEADER_BYTES);
+
+        ByteBuffer.wrap(encoded).putInt(encoded.length - HEADER_BYTES).putInt((int) crc.getValue());
+
+        return encoded;
+    }
+
+    /**
+     * Reads a record laid out by {@link #encode(Record)}
+     *
+     * @param encoded The bytes of the record
+     * @return The record, or null if it is damaged
+     */
+    private static Record decode(byte[] encoded)
+    {
+        ByteBuffer header = ByteBuffer.wrap(encoded);
+
+        int length = header.getInt();
+        int checksum = header.getInt();
+
+        if (length != encoded.length - HEADER_BYTES)
+        {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(encoded, HEADER_BYTES, length);
+
+        if ((int) crc.getValue() != checksum)
+        {
+            return null;
+        }
+
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(encoded, HEADER_BYTES, length)))
+        {
+            byte type = input.readByte();
+            long sequence = input.readLong();
+            String serialNumber = input.readUTF();
+
+            if (type == REVOKE)
+            {
+                return new Record(REVOKE, sequence, serialNumber, null, null, false, null);
+            }
+
+            if (type != PUT)
+            {
+                return null;
+            }
+
+            String country = input.readUTF().intern();
+            String validFrom = input.readUTF().intern();
+            boolean valid = input.readBoolean();
+
+            byte[] value = new byte[input.readInt()];
+            input.readFully(value);
+
+            return new Record(PUT, sequence, serialNumber, country, validFrom, valid, value);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            return null;
+        }
+    }
+}
@@ -1,26 +1,27 @@
 package core;
 
-import com.google.gson.Gson;
 import exceptions.*;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Objects;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static core.utils.MoneyUtils.encode;
-import static core.utils.MoneyUtils.sha256;
-
 public abstract class Money
 {
     /*
@@ -59,7 +60,8 @@ public abstract class Money
     // Holder for error messages
     private HashMap<String, String> errorsByFieldName = new HashMap<>();
 
-    private Enigma enigma;
+    // The essential fields and validators of this currency, shared by all its instances
+    private final ValidationPlan plan;
 
     /*
      * Just in case you missed it,
@@ -68,34 +70,49 @@ public abstract class Money
 
 
     /**
-     * FieldTypes that we need in order to validateValues any currency
+     * The fields that we need in order to validateValues any currency, in the order in which
+     * they are to be validated
      * <p>
-     * The end result will be an array of HashMap essentialFields with attributes
      * For example
      * [
-     * {
-     * type        => TextField,
-     * label       => "Account Holder Name",
-     * validator   => validateAccountHolderName()
-     * },
-     * {
-     * type        => TextArea,
-     * label       => "Account Holder Address",
-     * validator   => validateAccountHolderAddress()
-     * }
+     * new Field("accountHolderName", "Account Holder Name"),
+     * new Field("accountHolderAddress", "Account Holder Address")
      * ]
+     * <p>
+     * Each field must have a validator, given by {@link #validators()}. Alternatively, for a field
+     * named "accountHolderName" the concrete class may define a public "validate_accountHolderName"
+     * method returning a {@link FieldResult}
      */
-    public abstract ArrayList<HashMap<String, Object>> essentialFields();
+    public abstract List<Field> essentialFields();
 
     /**
-     * Values of the essential fields
+     * The validators of the essential and optional fields, by field name. A field that is not
+     * essential but has a validator is accepted as an optional field
+     * <p>
+     * The validators are asked for once per currency and shared by all its instances, so they
+     * must not depend on the instance. See {@link Validators} for the common ones
+     *
+     * @return The validators by field name, none by default
      */
-    protected ArrayList<HashMap<String, Object>> values;
+    protected Map<String, FieldValidator> validators()
+    {
+        return Collections.emptyMap();
+    }
+
+    /*
+     * The essential fields followed by the optional fields that were entered,
+     * and their input values by the same ordinal
+     */
+    private Field[] fields;
+    private String[] inputs;
+
+    // Whether the validator of each field ran during the last validation, by ordinal
+    private boolean[] validated;
 
     /**
      * Constructor of the Money class
      *
-     * @param values The values of the essential, optional and derived fields as an ArrayList of HashMaps
+     * @param values The input values of the essential and optional fields by field name
      * @throws NoSuchMethodException              Undefined validator methods
      * @throws IncompleteFieldDefinitionException Field definition is incomplete
      * @throws FieldClashException                Attempting to define optional field with the same name as an essential field
@@ -106,6 +123,30 @@ public abstract class Money
             IncompleteFieldDefinitionException, FieldClashException,
             NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException
     {
+        this(values, null);
+    }
+
+    /**
+     * Constructor for currencies whose plan was compiled beforehand, such as those declared in a
+     * {@link CurrencySpec}, which all share one class
+     *
+     * @param values The input values of the essential and optional fields by field name
+     * @param plan   The plan of the currency, or null to use the plan of its class
+     * @throws NoSuchMethodException              Undefined validator methods
+     * @throws IncompleteFieldDefinitionException Field definition is incomplete
+     * @throws FieldClashException                Attempting to define optional field with the same name as an essential field
+     * @throws NoSuchPaddingException             Invalid padding in the key file
+     * @throws NoSuchAlgorithmException           Invalid encryption algorithm
+     */
+    Money(HashMap<String, String> values, ValidationPlan plan) throws NoSuchMethodException,
+            IncompleteFieldDefinitionException, FieldClashException,
+            NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException
+    {
+        /*
+         * Everything that does not depend on the values is worked out once per currency
+         */
+        this.plan = plan == null ? ValidationPlan.of(this) : plan;
+
         /*
          * Check if all the validators exist
          */
@@ -120,11 +161,6 @@ public abstract class Money
          * Set the values that were entered while initializing into the fields
          */
         injectFields(values);
-
-        /*
-         Initialize the encryption classes
-         */
-        enigma = new Enigma();
     }
 
     /**
@@ -135,17 +171,17 @@ public abstract class Money
      */
     private void checkValues(HashMap<String, ?> values)
     {
-        for (HashMap<String, Object> field : essentialFields())
+        for (Field field : plan.essentialFields())
         {
-            String fieldName = (String) field.get("name");
-            String userValue = (String) values.get(fieldName);
+            String userValue = (String) values.get(field.getName());
 
             /*
              * Add an exception if any of the mandatory fields does not have a value
              */
             if (userValue == null)
             {
-                errorsByFieldName.put(fieldName, String.format("Essential field '%s' must have a value", fieldName));
+                errorsByFieldName.put(field.getName(),
+                        String.format("Essential field '%s' must have a value", field.getName()));
             }
         }
     }
@@ -155,62 +191,50 @@ public abstract class Money
      */
     private void injectFields(HashMap<String, ?> values) throws FieldClashException
     {
-        ArrayList<HashMap<String, Object>> injectedFields = new ArrayList<>();
+        if (plan.fieldClash() != null)
+        {
+            throw new FieldClashException(plan.fieldClash());
+        }
+
+        List<Field> essentialFields = plan.essentialFields();
 
         /*
-         * Get all the essential fields
+         * The essential fields come first, whatever values they were given
          */
-        ArrayList<HashMap<String, Object>> fields = essentialFields();
+        int size = essentialFields.size();
 
-        for (HashMap<String, Object> field : fields)
+        for (String fieldName : values.keySet())
         {
-            /*
-             * Get the name of the field
-             */
-            String fieldName = (String) field.get("name");
-
-            // This is a redundant check!
-            if (field.containsKey(fieldName))
+            if (!plan.isEssential(fieldName))
             {
-                throw new FieldClashException(
-                        String.format("Cannot add %s as an optional field because it" +
-                                        " is already defined as an essential field",
-                                fieldName
-                        )
-                );
+                size++;
             }
+        }
 
-            /*
-             * Get the value of this field name as defined from the initialization parameters
-             */
-            String fieldValue = (String) values.get(fieldName);
-
-            /*
-             * Set the value by adding a new field onto the array
-             */
-            field.put("value", fieldValue);
-
-            /*
-             * Remove this from 'values' field so that we can implement the optional fields
-             */
+        fields = new Field[size];
+        inputs = new String[size];
+        validated = new boolean[size];
 
-            values.remove(fieldName);
+        int ordinal = 0;
 
-            injectedFields.add(field);
+        for (Field field : essentialFields)
+        {
+            fields[ordinal] = field;
+            inputs[ordinal] = (String) values.get(field.getName());
+            ordinal++;
         }
 
         /*
-         * Inject the optional fields
+         * Inject the optional fields, which are the values left over once the essential fields are taken
          */
         for (HashMap.Entry<String, ?> entry : values.entrySet())
         {
-            String validatorMethod = String.format("validate_%s", entry.getKey());
-
-            try
+            if (plan.isEssential(entry.getKey()))
             {
-                this.getClass().getDeclaredMethod(validatorMethod);
+                continue;
             }
-            catch (NoSuchMethodException ex)
+
+            if (!plan.hasValidator(entry.getKey()))
             {
                 /*
                     Validation method is missing which implies that this field is not valid.
@@ -223,117 +247,217 @@ public abstract class Money
                 );
             }
 
-            HashMap<String, Object> optionalField = new HashMap<>();
-            optionalField.put("name", entry.getKey());
-            optionalField.put("value", entry.getValue());
+            fields[ordinal] = new Field(entry.getKey(), null);
+            inputs[ordinal] = (String) entry.getValue();
+            ordinal++;
+        }
+    }
+
+    /**
+     * The definition of a field that was entered
+     *
+     * @param fieldName The name of the field
+     * @return The field, or null if it was not entered
+     */
+    protected Field field(String fieldName)
+    {
+        int ordinal = ordinalOf(fieldName);
+
+        return ordinal < 0 ? null : fields[ordinal];
+    }
+
+    /**
+     * The input value of a field
+     *
+     * @param fieldName The name of the field
+     * @return The input value, or null if the field has no value
+     */
+    protected String inputValue(String fieldName)
+    {
+        int ordinal = ordinalOf(fieldName);
+
+        return ordinal < 0 ? null : inputs[ordinal];
+    }
 
-            injectedFields.add(optionalField);
+    /**
+     * The position of a field. There are only a handful, so they are simply scanned
+     *
+     * @param fieldName The name of the field
+     * @return The ordinal of the field, or -1 if it was not entered
+     */
+    private int ordinalOf(String fieldName)
+    {
+        for (int ordinal = 0; ordinal < fields.length; ordinal++)
+        {
+            if (fields[ordinal].getName().equals(fieldName))
+            {
+                return ordinal;
+            }
         }
 
-        this.values = injectedFields;
+        return -1;
     }
 
     /**
      * Checks that the validators defined in essentialFields() exist
      * <p>
-     * Each of the essentialFields must have a way to validateValues its input values. This is
-     * defined in the 'validator' parameter in each of the field. The exact
-     * validator methods need to be concretely defined in each respective Currency class.
+     * Each of the essentialFields must have a way to validateValues its input values. For a field
+     * named "accountHolderName" the concrete class must define a public "validate_accountHolderName"
+     * method. The validators are resolved once per currency by the {@link ValidationPlan}.
      *
      * @throws IncompleteFieldDefinitionException Field definition is incomplete
-     * @throws NoSuchMethodException              Validator methods do not exist
      */
     private void checkValidators() throws IncompleteFieldDefinitionException
     {
-        ArrayList<HashMap<String, Object>> fields = essentialFields();
-
-        for (HashMap<String, Object> field : fields)
+        /*
+         * Ensure that each field has a 'name' attribute
+         */
+        if (plan.incompleteDefinition() != null)
         {
+            throw new IncompleteFieldDefinitionException(plan.incompleteDefinition());
+        }
 
-            /*
-             * Ensure that each field has a 'name' attribute
-             */
-            String fieldName = (String) field.get("name");
+        /*
+            Validation methods that are missing imply that those fields are not valid.
+            Mask this from the end user
+        */
+        errorsByFieldName.putAll(plan.missingValidators());
+    }
 
-            if (fieldName == null)
+    /**
+     * Validates the input fields
+     *
+     * @return The validation results, in the order of the fields. Fields without a value are left out
+     */
+    public List<FieldResult> validate()
+    {
+        List<FieldResult> results = new ArrayList<>(fields.length);
+
+        for (int ordinal = 0; ordinal < fields.length; ordinal++)
+        {
+            validated[ordinal] = false;
+
+            if (inputs[ordinal] == null)
             {
-                throw new IncompleteFieldDefinitionException("The 'name' attribute of one or more fields has not been defined");
+                continue;
             }
 
-            /*
-             * Make necessary a validator method based on the name of the field
-             *
-             * For instance, if the name of the field is "accountHolderName", then the
-             * concrete class must have a definition of "validate_accountHolderName"
-             */
-            String validatorMethod = String.format("validate_%s", fieldName);
-
-            /*
-             * Checks if all the 'validator' methods have been implemented.
-             * Ideally, the validator methods should return a HashMap of the validation
-             * results together with an error message whenever applicable.
-             * Furthermore, they need to be declared public in order for the aggregated
-             * method validateValues() to work
-             *
-             * Throws a java.lang.NoSuchMethodException if method does not exist
-             */
+            FieldResult result = null;
 
             try
             {
-                this.getClass().getDeclaredMethod(validatorMethod);
+                result = runValidator(ordinal);
             }
-            catch (NoSuchMethodException ex)
+            catch (VirtualMachineError error)
             {
-                /*
-                    Validation method is missing which implies that this field is not valid.
-                    Mask this from the end user
-                */
-                errorsByFieldName.put(fieldName,
-                        String.format("'%s' is not a valid input parameter for %s",
-                                fieldName, this.getClass().getSimpleName()
-                        )
-                );
+                throw error;
             }
+            catch (Throwable throwable)
+            {
+                // The field is reported as it was entered, which marks it as not valid
+            }
+
+            if (result == null)
+            {
+                results.add(FieldResult.unvalidated(fields[ordinal], inputs[ordinal]));
+                continue;
+            }
+
+            validated[ordinal] = true;
+            results.add(result);
         }
+
+        return results;
     }
 
     /**
-     * Invokes the validation of the input fields
+     * Runs the validator of a field
      *
-     * @return An ArrayList containing the validation results
+     * @param ordinal The ordinal of the field
+     * @return The result, or null if the field has no validator
+     * @throws Throwable Whatever the validator throws
      */
-    public ArrayList<HashMap<String, Object>> validateValues()
+    private FieldResult runValidator(int ordinal) throws Throwable
     {
-        ArrayList validation = new ArrayList();
+        FieldValidator fieldValidator = plan.fieldValidator(ordinal, fields[ordinal].getName());
 
-        for (HashMap<String, Object> field : values)
+        if (fieldValidator != null)
         {
-            String fieldName = (String) field.get("name");
-            String fieldValue = (String) field.get("value");
+            return fieldValidator.validate(fields[ordinal], inputs[ordinal]);
+        }
 
-            field.put("validity", false);
+        MethodHandle validator = plan.validator(fields[ordinal].getName());
 
-            if(fieldValue == null)
-            {
-                continue;
-            }
+        return validator == null ? null : (FieldResult) validator.invokeExact(this);
+    }
 
-            String validatorMethod = String.format("validate_%s", fieldName);
+    /**
+     * Invokes the validation of the input fields
+     *
+     * @return An ArrayList containing the validation results, followed by the errors by field name
+     */
+    public ArrayList<HashMap<String, Object>> validateValues()
+    {
+        return validationReport(validate());
+    }
 
-            try
-            {
-                Method method = this.getClass().getDeclaredMethod(validatorMethod);
+    /**
+     * The validation results in the form returned by {@link #validateValues()}
+     *
+     * @param results The results of {@link #validate()}
+     * @return An ArrayList containing the validation results, followed by the errors by field name
+     */
+    public ArrayList<HashMap<String, Object>> validationReport(List<FieldResult> results)
+    {
+        return asMaps(results, false);
+    }
 
-                validation.add(method.invoke(this));
+    /**
+     * Errors that concern the input fields as a whole, such as missing essential fields
+     * or fields that the currency does not accept
+     *
+     * @return The error messages by field name
+     */
+    public Map<String, String> getErrorsByFieldName()
+    {
+        return Collections.unmodifiableMap(errorsByFieldName);
+    }
 
-                field.put("validity", true);
-            }
-            catch (Exception exception)
+    /**
+     * Checks whether a coin can be minted from the input fields
+     *
+     * @param results The results of {@link #validate()}
+     * @return True if every field is valid and there are no errors by field name
+     */
+    public boolean isValid(List<FieldResult> results)
+    {
+        for (FieldResult result : results)
+        {
+            if (!result.isValid())
             {
-                validation.add(field);
+                return false;
             }
         }
 
+        return errorsByFieldName.isEmpty();
+    }
+
+    /**
+     * The validation results as HashMaps, which is how they are serialized
+     *
+     * @param results The validation results
+     * @param stored  True for the form stored in a coin, without validity and warnings
+     * @return The results followed by the errors by field name
+     */
+    private ArrayList<HashMap<String, Object>> asMaps(List<FieldResult> results, boolean stored)
+    {
+        ArrayList<HashMap<String, Object>> validation = new ArrayList<>(results.size() + 1);
+
+        for (FieldResult result : results)
+        {
+            validation.add(stored ? result.toStoredMap() : result.toMap());
+        }
+
         HashMap<String, Object> errors = new HashMap<>();
         errors.put("name", "errorsByFieldName");
         errors.put("label", "Errors by field name");
@@ -345,9 +469,9 @@ public abstract class Money
     }
 
     /**
-     * Saves the fields into the database
+     * Validates the fields and saves them into the database
      *
-     * @return The id of the saved object
+     * @return The saved coin, or the validation results if the fields are not valid
      * @throws UndefinedValidatorException Validator has not been defined
      * @throws IllegalAccessException      Validator methods defined with the incorrect accessibility
      * @throws InvalidKeySpecException     Encryption key specifications are invalid
@@ -356,96 +480,137 @@ public abstract class Money
      * @throws BadPaddingException         Invalid padding in the key file
      * @throws InvalidKeyException         Encryption keys are invalid
      * @throws IllegalBlockSizeException   Invalid block size in the key file
+     * @throws GeneralSecurityException    Any other exception while encrypting the payload
+     * @throws CoinRevokedException        The coin that the fields make has been revoked
      */
     public String saveCoin() throws UndefinedValidatorException, IllegalAccessException,
             InvalidKeySpecException, NoSuchAlgorithmException,
-            IOException, BadPaddingException, InvalidKeyException, IllegalBlockSizeException, NoSuchProviderException, NoSuchPaddingException
-
+            IOException, BadPaddingException, InvalidKeyException, IllegalBlockSizeException, NoSuchProviderException, NoSuchPaddingException,
+            GeneralSecurityException, CoinRevokedException
     {
-        ArrayList<HashMap<String, Object>> validatedFields = validateValues();
-
-        HashMap<String, Object> errorMap = new HashMap<>();
+        return saveCoin(validate());
+    }
 
-        for (HashMap<String, Object> field : validatedFields)
+    /**
+     * Saves the fields into the database, given the results of validating them
+     *
+     * @param results The results of {@link #validate()}
+     * @return The saved coin as JSON, the same as {@link CoinDisplay#showCoin(String)} would return
+     * for it, or the validation results if the fields are not valid, or null if the coin could not be stored
+     * @throws IOException              Input/Output exception when reading the encryption keys from file
+     * @throws GeneralSecurityException Any exception while encrypting or signing the payload
+     * @throws CoinRevokedException     The coin that the fields make has been revoked
+     */
+    public String saveCoin(List<FieldResult> results) throws IOException, GeneralSecurityException,
+            CoinRevokedException
+    {
+        if (!isValid(results))
         {
-            String fieldName = (String) field.get("name");
-
-            if(fieldName.equalsIgnoreCase("errorsByFieldName"))
-            {
-                errorMap = field;
-                continue;
-            }
-
-            if(field.get("warningMessage") != null)
-            {
-//                Logger.getLogger(getCountryName()).log(
-//                        Level.WARNING,
-//                        String.format("%s: %s", fieldName, field.get("warningMessage"))
-//                );
-
-
-            // Is there a need to store warnings?
-            field.remove("warningMessage");
-            }
-
-            boolean validity = (field.get("validity") != null) && (boolean) field.get("validity");
+            return validationReport(results).toString();
+        }
 
-            if (!validity)
+        try
+        {
+            return saveCoinAsync(results).join();
+        }
+        catch (CompletionException ex)
+        {
+            if (ex.getCause() instanceof CoinRevokedException)
             {
-                return validatedFields.toString();
+                throw (CoinRevokedException) ex.getCause();
             }
 
-            // We now know that it is valid. No need to store validity message in database
-            field.remove("validity");
+            throw ex;
         }
+    }
 
-        errorsByFieldName = (HashMap<String, String>) errorMap.get("value");
-
-        if(errorsByFieldName.size() != 0)
+    /**
+     * Prepares the coin on the calling thread and queues it for storage, so that coins saved
+     * around the same time are committed together. A coin that is already stored and valid is
+     * returned as it is, without being encrypted or written again
+     *
+     * @param results The results of {@link #validate()}, all of which must be valid
+     * @return A future completed with the saved coin as JSON once it has been committed, or with null
+     * if the coin could not be stored. If the coin has been revoked, the future completes exceptionally
+     * with a {@link CoinRevokedException}
+     * @throws IllegalArgumentException The fields are not valid
+     * @throws IOException              Input/Output exception when reading the encryption keys from file
+     * @throws GeneralSecurityException Any exception while encrypting or signing the payload
+     */
+    public CompletableFuture<String> saveCoinAsync(List<FieldResult> results) throws IOException, GeneralSecurityException
+    {
+        if (!isValid(results))
         {
-            return validatedFields.toString();
+            throw new IllegalArgumentException("Only valid fields can be saved");
         }
 
-        validatedFields.remove("errorsByFieldName");
-
         /*
          * If we reach this point of the code, all the fields have values
          * and they have all been validated OK. We now need to save the values and return an ID
          * of the saved data.
          *
-         * This ID, the storage key, will be the hash of the input values
+         * This ID, the storage key, will be the hash of the input values in their canonical form
          */
-        String valuesAsJSON = new Gson().toJson(values);
+        String storageKey = HashingService.getInstance().coinId(getCountryName(), fields, inputs, validated);
 
-        String storageKey = encode(
-                Objects.requireNonNull(sha256(
-                        encode(
-                                String.format("%s.%s", getCountryName(), valuesAsJSON)
-                        )
-                ))
-        );
+        Store store = new Store();
+
+        /*
+         * The same values always make the same coin. If it has been minted before, hand back
+         * the stored coin instead of encrypting and writing it again. The index rules out
+         * almost every new coin without a query
+         */
+        if (store.mightContain(storageKey))
+        {
+            String existing = new CoinDisplay().findCoin(storageKey);
+
+            if (existing != null)
+            {
+                return CompletableFuture.completedFuture(existing);
+            }
+
+            // Minting the same values again must not bring a revoked coin back
+            if (store.isRevoked(storageKey))
+            {
+                CompletableFuture<String> revoked = new CompletableFuture<>();
+                revoked.completeExceptionally(new CoinRevokedException(storageKey));
+
+                return revoked;
+            }
+        }
+
+        // Warnings and validity are not stored
+        ArrayList<HashMap<String, Object>> validatedFields = asMaps(results, true);
 
         HashMap<String, Object> coin = new HashMap<>();
         coin.put("coinId", storageKey);
         validatedFields.addAll(staticValues()); // Add static properties of the Currency
         validatedFields.add(coin);
 
+        String coinAsJSON = Json.write(validatedFields);
+
         /*
-         * Encrypt the payload
+         * Encrypt or sign the payload in its compact binary form. Neither goes through RSA for every coin.
+         * The encryption class is shared by the application. Validation alone never touches it
          */
-        String payload = enigma.encryptText(new Gson().toJson(validatedFields), enigma.getPrivate());
+        byte[] payload = Enigma.getInstance().protect(CoinCodec.encode(validatedFields));
 
-        Store store = new Store();
+        CoinCache cache = CoinCache.shared();
+        long savedAt = cache.epoch();
 
-        if (store.saveCoin(storageKey, getCountryName(), payload))
-        {
-            CoinDisplay display = new CoinDisplay();
-            return display.showCoin(storageKey);
-        }
-        else
-        {
-            return null;
-        }
+        // Cache the new coin as the display would read it back, since freshly minted coins are the most likely to be shown
+        return store.saveCoinAsync(storageKey, getCountryName(), payload)
+                .thenApply(saved ->
+                {
+                    if (!saved)
+                    {
+                        return null;
+                    }
+
+                    cache.put(storageKey, coinAsJSON, savedAt);
+
+                    return coinAsJSON;
+                });
     }
 
     /**
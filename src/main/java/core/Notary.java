@@ -0,0 +1,242 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Detached signatures over coin payloads.
+ * <p>
+ * Instead of "encrypting" a coin with the RSA private key, the payload is kept
+ * either in plain form or sealed in an {@link Envelope}, and an ECDSA signature
+ * over it proves that it was minted here. Coins are signed with the keys at
+ * {@link LockSmith#SIGNING_KEY} and {@link LockSmith#VERIFYING_KEY}.
+ * <p>
+ * A signed coin is laid out as
+ * <pre>
+ * [version: 1 byte][form: 1 byte][payload length: 4 bytes][payload][signature]
+ * </pre>
+ * where the signature covers everything before it. It is stored, like an envelope, as those
+ * bytes. Signed coins stored before coins were kept as bytes are {@value Envelope#PREFIX}
+ * followed by the Base64 of the bytes.
+ * <p>
+ * Coins are immutable once minted, so once the signature of a coin has been verified
+ * a digest of the stored bytes is remembered against its coin id, and the same bytes
+ * are not verified again.
+ */
+final class Notary
+{
+    static final byte VERSION = 2;
+
+    // The payload is the coin as it is
+    static final byte PLAIN = 0;
+
+    // The payload is an envelope holding the coin
+    static final byte SEALED = 1;
+
+    // The number of verified coins to remember
+    private static final int VERIFIED_CACHE_SIZE = 10000;
+
+    private static final int HEADER_BYTES = 6;
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Envelope envelope;
+
+    private final ThreadLocal<Signature> signature = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return Signature.getInstance(SIGNATURE_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    // Digests of verified coins by coin id, least recently used first
+    private final LinkedHashMap<String, byte[]> verified =
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest)
+                {
+                    return size() > VERIFIED_CACHE_SIZE;
+                }
+            };
+
+    // The key that the remembered coins were verified with
+    private PublicKey verifiedWith;
+
+    /**
+     * Instantiate the notary
+     *
+     * @param envelope The envelope used for sealed payloads
+     */
+    Notary(Envelope envelope)
+    {
+        this.envelope = envelope;
+    }
+
+    /**
+     * Signs a coin payload
+     *
+     * @param coin   The encoded coin
+     * @param sealed True to seal the payload in an envelope, false to keep it in plain form
+     * @return The signed coin, ready to be stored
+     * @throws GeneralSecurityException Error while sealing or signing
+     * @throws IOException              Input/output exception arising from reading the key files
+     */
+    byte[] sign(byte[] coin, boolean sealed) throws GeneralSecurityException, IOException
+    {
+        byte[] payload = sealed ? envelope.sealBytes(coin) : coin;
+
+        ByteBuffer unsigned = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        unsigned.put(VERSION).put(sealed ? SEALED : PLAIN).putInt(payload.length).put(payload);
+
+        Signature signer = signature.get();
+        signer.initSign(keys().signingKey);
+        signer.update(unsigned.array());
+        byte[] signed = signer.sign();
+
+        ByteBuffer stored = ByteBuffer.allocate(unsigned.capacity() + signed.length);
+        stored.put(unsigned.array()).put(signed);
+
+        return stored.array();
+    }
+
+    /**
+     * Verifies a signed coin and recovers the coin
+     *
+     * @param coinId The id of the coin, under which the verification is remembered
+     * @param bytes  The bytes of the signed coin
+     * @return The coin, as it was given to {@link #sign(byte[], boolean)}
+     * @throws GeneralSecurityException The signature does not match, or the payload cannot be unsealed
+     * @throws IOException              Input/output exception arising from reading the key files
+     */
+    byte[] open(String coinId, byte[] bytes) throws GeneralSecurityException, IOException
+    {
+        ByteBuffer coin = ByteBuffer.wrap(bytes);
+
+        if (coin.remaining() < HEADER_BYTES)
+        {
+            throw new GeneralSecurityException("Truncated signed coin");
+        }
+
+        byte version = coin.get();
+
+        if (version != VERSION)
+        {
+            throw new GeneralSecurityException(String.format("Unsupported signed coin version %d", version));
+        }
+
+        byte form = coin.get();
+        int length = coin.getInt();
+
+        if (length < 0 || length > coin.remaining())
+        {
+            throw new GeneralSecurityException("Truncated signed coin");
+        }
+
+        verify(coinId, bytes, HEADER_BYTES + length);
+
+        byte[] payload = Arrays.copyOfRange(bytes, HEADER_BYTES, HEADER_BYTES + length);
+
+        switch (form)
+        {
+            case PLAIN:
+                return payload;
+            case SEALED:
+                return envelope.openBytes(payload);
+            default:
+                throw new GeneralSecurityException(String.format("Unknown signed coin form %d", form));
+        }
+    }
+
+    /**
+     * Verifies the signature of a coin unless these exact bytes were verified before
+     *
+     * @param coinId      The id of the coin
+     * @param bytes       The bytes of the signed coin
+     * @param signedBytes The number of leading bytes covered by the signature
+     * @throws GeneralSecurityException The signature does not match
+     * @throws IOException              Input/output exception arising from reading the key files
+     */
+    private void verify(String coinId, byte[] bytes, int signedBytes) throws GeneralSecurityException, IOException
+    {
+        PublicKey verifyingKey = keys().verifyingKey;
+        byte[] fingerprint = digest.get().digest(bytes);
+
+        synchronized (verified)
+        {
+            if (verifiedWith != verifyingKey)
+            {
+                // The keys have been rotated. Nothing remembered so far can be trusted
+                verified.clear();
+                verifiedWith = verifyingKey;
+            }
+
+            if (coinId != null && Arrays.equals(verified.get(coinId), fingerprint))
+            {
+                return;
+            }
+        }
+
+        Signature verifier = signature.get();
+        verifier.initVerify(verifyingKey);
+        verifier.update(bytes, 0, signedBytes);
+
+        if (!verifier.verify(bytes, signedBytes, bytes.length - signedBytes))
+        {
+            throw new SignatureException(String.format("The signature of coin %s does not match", coinId));
+        }
+
+        if (coinId != null)
+        {
+            synchronized (verified)
+            {
+                if (verifiedWith == verifyingKey)
+                {
+                    verified.put(coinId, fingerprint);
+                }
+            }
+        }
+    }
+
+    /**
+     * The current keys, which must include the signing keys
+     *
+     * @return The current keys
+     * @throws GeneralSecurityException The signing keys have not been created
+     * @throws IOException              Input/output exception arising from reading the key files
+     */
+    private static KeyRing.Keys keys() throws GeneralSecurityException, IOException
+    {
+        KeyRing.Keys keys = KeyRing.current();
+
+        if (keys.signingKey == null || keys.verifyingKey == null)
+        {
+            throw new InvalidKeyException("The signing keys have not been created");
+        }
+
+        return keys;
+    }
+}
@@ -0,0 +1,480 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the coins in an SQLite database in WAL mode, written in group commits
+ */
+final class SqliteVault implements CoinVault
+{
+    private static final Logger LOGGER = Logger.getLogger(SqliteVault.class.getName());
+
+    // The database in which to store our coins
+    private static final String VAULT = "jdbc:sqlite:silo/coins.db";
+
+    // The folder that holds the database
+    private static final String VAULT_LOCATION = "silo";
+
+    /*
+     * Saving a coin again keeps the day it was first minted and whether it was revoked,
+     * which a plain INSERT OR REPLACE would reset to their defaults
+     */
+    private static final String SAVE_COIN =
+            "INSERT OR REPLACE INTO coins(serial_number, country, denomination, valid_from, validity) " +
+                    "VALUES(?1, ?2, ?3, " +
+                    "COALESCE((SELECT valid_from FROM coins WHERE serial_number = ?1), CURRENT_DATE), " +
+                    "COALESCE((SELECT validity FROM coins WHERE serial_number = ?1), 1))";
+
+    private static final String DISPLAY_COIN = "SELECT serial_number, denomination " +
+            "FROM coins " +
+            "WHERE serial_number = ? " +
+            "AND validity = ?";
+
+    private static final String REVOKE_COIN = "UPDATE coins SET validity = 0 WHERE serial_number = ?";
+
+    private static final String IS_REVOKED = "SELECT 1 FROM coins WHERE serial_number = ? AND validity = 0";
+
+    /*
+     * Listings page by key: each page starts after the last coin of the previous one,
+     * so that the index can seek straight to it
+     */
+    private static final String LIST_BY_COUNTRY = "SELECT serial_number, country, valid_from, validity " +
+            "FROM coins " +
+            "WHERE country = ? " +
+            "AND serial_number > ? " +
+            "ORDER BY serial_number " +
+            "LIMIT ?";
+
+    private static final String LIST_BY_VALID_FROM = "SELECT serial_number, country, valid_from, validity " +
+            "FROM coins " +
+            "WHERE valid_from BETWEEN ? AND ? " +
+            "AND (valid_from, serial_number) > (?, ?) " +
+            "ORDER BY valid_from, serial_number " +
+            "LIMIT ?";
+
+    private static final String LIST_REVOKED = "SELECT serial_number, country, valid_from, validity " +
+            "FROM coins " +
+            "WHERE validity = 0 " +
+            "AND serial_number > ? " +
+            "ORDER BY serial_number " +
+            "LIMIT ?";
+
+    private static final String[] INDEXES = {
+            "CREATE INDEX IF NOT EXISTS coins_by_country ON coins(country, serial_number)",
+            "CREATE INDEX IF NOT EXISTS coins_by_valid_from ON coins(valid_from, serial_number)",
+            // Few coins are ever revoked, so only those are indexed
+            "CREATE INDEX IF NOT EXISTS coins_revoked ON coins(serial_number) WHERE validity = 0"
+    };
+
+    // Rows fetched from the database at a time while a listing is streamed
+    private static final int FETCH_SIZE = 256;
+
+    private static final String SERIAL_NUMBERS = "SELECT serial_number FROM coins";
+
+    private static final String COUNT_COINS = "SELECT COUNT(*) FROM coins";
+
+    private final VaultPool pool;
+
+    // Batches the writes into group commits
+    private final CoinWriter writer;
+
+    // The serial numbers of the stored coins
+    private final CoinIndex index;
+
+    /**
+     * Prepares the vault for use: creates the folders and tables if they are missing,
+     * switches the database to WAL mode, indexes the serial numbers already stored and opens
+     * the connection pool and the writer
+     *
+     * @param poolSize     The number of connections to keep open
+     * @param batchSize    The most coins to commit in one transaction
+     * @param windowMillis How long the writer waits to fill a batch
+     * @param indexSize    The number of coins to size the index of serial numbers for
+     * @throws SQLException Error creating the tables or opening the connections
+     */
+    SqliteVault(int poolSize, int batchSize, long windowMillis, long indexSize) throws SQLException
+    {
+        /*
+         * Create the necessary folders to hold the SQLite database
+         */
+        new File(VAULT_LOCATION).mkdirs();
+
+        pool = new VaultPool(VAULT, poolSize);
+
+        try (VaultConnection connection = pool.borrow())
+        {
+            constructStore(connection);
+
+            index = indexCoins(connection, indexSize);
+        }
+        catch (SQLException se)
+        {
+            pool.close();
+
+            throw se;
+        }
+
+        writer = new CoinWriter(this::commit, batchSize, windowMillis);
+    }
+
+    @Override
+    public void close()
+    {
+        writer.close();
+        pool.close();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> save(String serialNumber, String country, byte[] value)
+    {
+        // Idempotent
+        return writer.submit(serialNumber, country, value).thenApply(saved ->
+        {
+            if (saved)
+            {
+                index.add(serialNumber);
+            }
+
+            return saved;
+        });
+    }
+
+    @Override
+    public boolean mightContain(String serialNumber)
+    {
+        return index.mightContain(serialNumber);
+    }
+
+    @Override
+    public byte[] get(String serialNumber)
+    {
+        byte[] coin = null;
+
+        try (VaultConnection connection = pool.borrow())
+        {
+            try
+            {
+                PreparedStatement statement = connection.prepare(DISPLAY_COIN);
+                statement.setString(1, serialNumber);
+                statement.setInt(2, 1);
+
+                try (ResultSet resultSet = statement.executeQuery())
+                {
+                    // Extract data from result set
+                    while (resultSet.next())
+                    {
+                        // Retrieve by column name
+                        // Coins stored as text, before they were stored as bytes, come back as their UTF-8
+                        coin = resultSet.getBytes("denomination");
+                    }
+                }
+            }
+            catch (SQLException se)
+            {
+                connection.markBroken();
+
+                throw se;
+            }
+        }
+        catch (SQLException se)
+        {
+            se.printStackTrace();
+        }
+
+        return coin;
+    }
+
+    @Override
+    public boolean isRevoked(String serialNumber)
+    {
+        boolean revoked = false;
+
+        try (VaultConnection connection = pool.borrow())
+        {
+            try
+            {
+                PreparedStatement statement = connection.prepare(IS_REVOKED);
+                statement.setString(1, serialNumber);
+
+                try (ResultSet resultSet = statement.executeQuery())
+                {
+                    revoked = resultSet.next();
+                }
+            }
+            catch (SQLException se)
+            {
+                connection.markBroken();
+
+                throw se;
+            }
+        }
+        catch (SQLException se)
+        {
+            se.printStackTrace();
+        }
+
+        return revoked;
+    }
+
+    @Override
+    public boolean revoke(String serialNumber)
+    {
+        boolean revoked = false;
+
+        try (VaultConnection connection = pool.borrow())
+        {
+            try
+            {
+                PreparedStatement statement = connection.prepare(REVOKE_COIN);
+                statement.setString(1, serialNumber);
+
+                revoked = statement.executeUpdate() > 0;
+            }
+            catch (SQLException se)
+            {
+                connection.markBroken();
+
+                throw se;
+            }
+        }
+        catch (SQLException se)
+        {
+            se.printStackTrace();
+        }
+
+        return revoked;
+    }
+
+    @Override
+    public CoinRecord scanByCountry(String country, String after, int pageSize, Consumer<CoinRecord> coins)
+            throws IOException
+    {
+        return list(LIST_BY_COUNTRY, pageSize, coins, country, after);
+    }
+
+    @Override
+    public CoinRecord scanByValidFrom(String from, String to, String afterDay, String afterCoin, int pageSize,
+                                      Consumer<CoinRecord> coins) throws IOException
+    {
+        return list(LIST_BY_VALID_FROM, pageSize, coins, from, to, afterDay, afterCoin);
+    }
+
+    @Override
+    public CoinRecord scanRevoked(String after, int pageSize, Consumer<CoinRecord> coins) throws IOException
+    {
+        return list(LIST_REVOKED, pageSize, coins, after);
+    }
+
+    /**
+     * Streams the coins of a listing query
+     *
+     * @param sql        The query, whose last parameter is the page size
+     * @param pageSize   The most coins to list
+     * @param coins      Receives the coins as they are read
+     * @param parameters The other parameters of the query
+     * @return The last coin if the page is full, so that there may be more, or null otherwise
+     * @throws IOException Error reading the coins
+     */
+    private CoinRecord list(String sql, int pageSize, Consumer<CoinRecord> coins, String... parameters)
+            throws IOException
+    {
+        try (VaultConnection connection = pool.borrow())
+        {
+            try
+            {
+                PreparedStatement statement = connection.prepare(sql);
+
+                for (int i = 0; i < parameters.length; i++)
+                {
+                    statement.setString(i + 1, parameters[i]);
+                }
+
+                statement.setInt(parameters.length + 1, pageSize);
+                statement.setFetchSize(Math.min(pageSize, FETCH_SIZE));
+
+                CoinRecord last = null;
+                int count = 0;
+
+                try (ResultSet resultSet = statement.executeQuery())
+                {
+                    while (resultSet.next())
+                    {
+                        last = new CoinRecord(
+                                resultSet.getString("serial_number"),
+                                resultSet.getString("country"),
+                                resultSet.getString("valid_from"),
+                                resultSet.getInt("validity") == 1
+                        );
+
+                        coins.accept(last);
+                        count++;
+                    }
+                }
+
+                return count == pageSize ? last : null;
+            }
+            catch (SQLException se)
+            {
+                connection.markBroken();
+
+                throw se;
+            }
+        }
+        catch (SQLException se)
+        {
+            throw new IOException("Could not list the coins", se);
+        }
+    }
+
+    /**
+     * Commits the given coins as one transaction
+     *
+     * @param coins The coins to be written
+     * @return True if the transaction was committed, false otherwise
+     */
+    private boolean commit(List<CoinWriter.PendingCoin> coins)
+    {
+        try (VaultConnection lease = pool.borrow())
+        {
+            Connection connection = lease.connection();
+
+            try
+            {
+                connection.setAutoCommit(false);
+
+                PreparedStatement statement = lease.prepare(SAVE_COIN);
+
+                for (CoinWriter.PendingCoin coin : coins)
+                {
+                    statement.setString(1, coin.serialNumber);
+                    statement.setString(2, coin.country);
+                    statement.setBytes(3, coin.value);
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+                connection.commit();
+
+                return true;
+            }
+            catch (SQLException se)
+            {
+                LOGGER.log(Level.SEVERE, String.format("Could not write a batch of %d coins", coins.size()), se);
+
+                try
+                {
+                    connection.rollback();
+                }
+                catch (SQLException ignored)
+                {
+                    // The connection is replaced below either way
+                }
+
+                /*
+                 * Start afresh rather than reuse a connection whose statement may still hold a half-run batch
+                 */
+                lease.markBroken();
+
+                return false;
+            }
+            finally
+            {
+                try
+                {
+                    connection.setAutoCommit(true);
+                }
+                catch (SQLException se)
+                {
+                    lease.markBroken();
+                }
+            }
+        }
+        catch (SQLException se)
+        {
+            LOGGER.log(Level.SEVERE, "Could not lease a vault connection", se);
+
+            return false;
+        }
+    }
+
+    /**
+     * Reads the serial numbers of every stored coin into a new index
+     *
+     * @param connection The connection on which to read the coins
+     * @param indexSize  The number of coins to size the index for, unless the vault already holds more
+     * @return The index
+     * @throws SQLException Error reading the coins
+     */
+    private static CoinIndex indexCoins(VaultConnection connection, long indexSize) throws SQLException
+    {
+        try (Statement statement = connection.connection().createStatement())
+        {
+            long count;
+
+            try (ResultSet resultSet = statement.executeQuery(COUNT_COINS))
+            {
+                count = resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+
+            // Leave room for as many new coins again, so the index stays accurate for a while
+            CoinIndex coinIndex = new CoinIndex(Math.max(indexSize, 2 * count));
+
+            try (ResultSet resultSet = statement.executeQuery(SERIAL_NUMBERS))
+            {
+                while (resultSet.next())
+                {
+                    coinIndex.add(resultSet.getString(1));
+                }
+            }
+
+            return coinIndex;
+        }
+    }
+
+    /**
+     * Initialize the storage tables
+     *
+     * @param connection The connection on which to create the tables
+     * @throws SQLException Error creating the tables
+     */
+    private static void constructStore(VaultConnection connection) throws SQLException
+    {
+        /*
+         * SQL statement for creating a new table. Tables created when the coins were text keep
+         * their TEXT column, which stores the bytes of new coins as they are
+         */
+        String sql = "CREATE TABLE IF NOT EXISTS coins(" +
+                "serial_number TEXT NOT NULL UNIQUE," +
+                "country TEXT," +
+                "denomination BLOB," +
+                "valid_from DATE DEFAULT CURRENT_DATE," +
+                "validity INT DEFAULT 1," +
+                "PRIMARY KEY (serial_number)" +
+                ")";
+
+        try (Statement statement = connection.connection().createStatement())
+        {
+            /*
+             * Readers no longer block the writer, and the writer appends to the log
+             * instead of rewriting pages in place. The mode is stored in the database
+             */
+            statement.execute("PRAGMA journal_mode = WAL");
+
+            // create a new table
+            statement.executeUpdate(sql);
+
+            // Listings seek through these rather than scanning the table
+            for (String index : INDEXES)
+            {
+                statement.executeUpdate(index);
+            }
+        }
+    }
+}
@@ -1,144 +1,232 @@
 package core;
 
-import java.io.File;
-import java.sql.*;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
- * Safekeeping of the coins into the database
+ * Safekeeping of the coins into the vault
  */
 final class Store
 {
-    // The database in which to store our coins
-    private static final String VAULT = "jdbc:sqlite:silo/coins.db";
+    /**
+     * Opens a backend
+     */
+    interface Opener
+    {
+        CoinVault open() throws SQLException, IOException;
+    }
+
+    // The backend shared by every Store, null until the vault is opened
+    private static volatile CoinVault vault;
 
     /**
      * Initialize the Store
+     * <p>
+     * The Store itself holds no state. The backend is opened once by {@link #open(Opener)}
      */
     Store()
     {
-        File vaultLocation = new File("silo");
+    }
+
+    /**
+     * Prepares the vault for use, closing the backend in use if there is one. This is meant to be
+     * called once at startup.
+     *
+     * @param opener Opens the backend
+     * @throws SQLException Error creating the tables or opening the connections
+     * @throws IOException  Error opening or recovering the log
+     */
+    static synchronized void open(Opener opener) throws SQLException, IOException
+    {
+        close();
 
-        if (!vaultLocation.exists())
+        vault = opener.open();
+    }
+
+    /**
+     * Writes out any queued coins and closes the vault
+     */
+    static synchronized void close()
+    {
+        if (vault != null)
         {
-            /*
-             * Create the necessary folders to hold the SQLite database
-             */
-            vaultLocation.mkdirs();
+            vault.close();
+            vault = null;
+        }
+    }
 
-            try
-            {
-                constructStore();
-            }
-            catch (Exception ex)
+    /**
+     * The backend, opened with the default settings if the application did not do so at startup
+     *
+     * @return The backend
+     */
+    private static CoinVault vault()
+    {
+        CoinVault coinVault = vault;
+
+        if (coinVault == null)
+        {
+            synchronized (Store.class)
             {
-                ex.printStackTrace();
-                System.exit(0);
+                if (vault == null)
+                {
+                    try
+                    {
+                        Vault.open();
+                    }
+                    catch (SQLException | IOException ex)
+                    {
+                        throw new IllegalStateException("The vault could not be opened", ex);
+                    }
+                }
+
+                coinVault = vault;
             }
         }
+
+        return coinVault;
     }
 
     /**
-     * Stores data into the database
+     * Stores data into the vault, waiting until it has been committed
      *
      * @param serialNumber The key with which to store the data
      * @param value        The actual value to be stored
      * @param country        The country associated with the value to be stored
      * @return True if successfully saved, false otherwise
      */
-    boolean saveCoin(String serialNumber, String country, String value)
+    boolean saveCoin(String serialNumber, String country, byte[] value)
     {
-        try (Connection connection = DriverManager.getConnection(VAULT))
-        {
-            // Idempotent
-            String sql = "INSERT OR REPLACE INTO coins(serial_number, country, denomination) VALUES(?, ?, ?)";
-
-            PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setString(1, serialNumber);
-            statement.setString(2, country);
-            statement.setString(3, value);
-            statement.executeUpdate();
-
-            connection.close();
+        return saveCoinAsync(serialNumber, country, value).join();
+    }
 
-            return true;
+    /**
+     * Queues data for storage into the vault. Coins queued around the same time
+     * are committed together
+     *
+     * @param serialNumber The key with which to store the data
+     * @param value        The actual value to be stored
+     * @param country      The country associated with the value to be stored
+     * @return A future completed with true once the data is committed, false if it could not be saved
+     */
+    CompletableFuture<Boolean> saveCoinAsync(String serialNumber, String country, byte[] value)
+    {
+        try
+        {
+            return vault().save(serialNumber, country, value);
         }
-        catch (SQLException se)
+        catch (IllegalStateException ex)
         {
-            se.printStackTrace();
+            ex.printStackTrace();
 
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
     }
 
     /**
-     * Extracts a given piece of data from the database
+     * Checks whether a coin might be stored, without going to the vault
      *
-     * @param serialNumber The id which we need to use to get the required data
-     * @return The encrypted value as stored in the database
+     * @param serialNumber The id of the coin
+     * @return False if the coin is certainly not stored, true if it might be
      */
-    Object displayCoin(String serialNumber)
+    boolean mightContain(String serialNumber)
     {
-        String coin = "";
-
-        try (Connection connection = DriverManager.getConnection(VAULT))
-        {
-            String sql = "SELECT serial_number, denomination " +
-                    "FROM coins " +
-                    "WHERE serial_number = ? " +
-                    "AND validity = ?";
-
-            PreparedStatement statement = connection.prepareStatement(sql);
-            statement.setString(1, serialNumber);
-            statement.setInt(2, 1);
-
-            ResultSet resultSet = statement.executeQuery();
+        return vault().mightContain(serialNumber);
+    }
 
-            // Extract data from result set
-            while (resultSet.next())
-            {
+    /**
+     * Extracts a given piece of data from the vault
+     *
+     * @param serialNumber The id which we need to use to get the required data
+     * @return The encrypted value as stored in the vault, or null if there is no valid coin with that id
+     */
+    byte[] displayCoin(String serialNumber)
+    {
+        return vault().get(serialNumber);
+    }
 
-                // Retrieve by column name
-                coin = resultSet.getString("denomination");
-            }
+    /**
+     * Checks whether a coin has been revoked
+     *
+     * @param serialNumber The id of the coin
+     * @return True if the coin is stored and has been revoked, false otherwise
+     */
+    boolean isRevoked(String serialNumber)
+    {
+        return vault().isRevoked(serialNumber);
+    }
 
-            // Clean-up environment
-            connection.close();
+    /**
+     * Marks a coin as no longer valid, so that it can no longer be displayed or minted again
+     *
+     * @param serialNumber The id of the coin
+     * @return True if the coin exists, false otherwise
+     */
+    boolean revokeCoin(String serialNumber)
+    {
+        try
+        {
+            return vault().revoke(serialNumber);
         }
-        catch (SQLException se)
+        finally
         {
-            se.printStackTrace();
+            // Even if the update failed, a stale copy does no good
+            CoinCache.shared().invalidate(serialNumber);
         }
+    }
+
+    /**
+     * Lists a page of the coins of a country
+     *
+     * @param country  The country of the coins
+     * @param after    The id of the last coin of the previous page, empty for the first page
+     * @param pageSize The most coins to list
+     * @param coins    Receives the coins as they are read
+     * @return The cursor of the next page, or null if this was the last page
+     * @throws IOException Error reading the coins
+     */
+    String listByCountry(String country, String after, int pageSize, Consumer<CoinRecord> coins) throws IOException
+    {
+        CoinRecord last = vault().scanByCountry(country, after, pageSize, coins);
 
-        return coin;
+        return last == null ? null : last.getCoinId();
     }
 
     /**
-     * Initialize the storage tables
+     * Lists a page of the coins minted between two days
+     *
+     * @param from      The first day
+     * @param to        The last day
+     * @param afterDay  The day of the last coin of the previous page, empty for the first page
+     * @param afterCoin The id of the last coin of the previous page, empty for the first page
+     * @param pageSize  The most coins to list
+     * @param coins     Receives the coins as they are read
+     * @return The cursor of the next page, or null if this was the last page
+     * @throws IOException Error reading the coins
      */
-    private void constructStore()
+    String listByValidFrom(String from, String to, String afterDay, String afterCoin, int pageSize,
+                           Consumer<CoinRecord> coins) throws IOException
     {
-        try (Connection connection = DriverManager.getConnection(VAULT))
-        {
-            // SQL statement for creating a new table
-            String sql = "CREATE TABLE coins(" +
-                    "serial_number TEXT NOT NULL UNIQUE," +
-                    "country TEXT," +
-                    "denomination TEXT," +
-                    "valid_from DATE DEFAULT CURRENT_DATE," +
-                    "validity INT DEFAULT 1," +
-                    "PRIMARY KEY (serial_number)" +
-                    ")";
-
-            PreparedStatement statement = connection.prepareStatement(sql);
-
-            // create a new table
-            statement.executeUpdate();
-
-            connection.close();
-        }
-        catch (SQLException e)
-        {
-            e.printStackTrace();
-        }
+        CoinRecord last = vault().scanByValidFrom(from, to, afterDay, afterCoin, pageSize, coins);
+
+        return last == null ? null : last.getValidFrom() + "," + last.getCoinId();
+    }
+
+    /**
+     * Lists a page of the revoked coins
+     *
+     * @param after    The id of the last coin of the previous page, empty for the first page
+     * @param pageSize The most coins to list
+     * @param coins    Receives the coins as they are read
+     * @return The cursor of the next page, or null if this was the last page
+     * @throws IOException Error reading the coins
+     */
+    String listRevoked(String after, int pageSize, Consumer<CoinRecord> coins) throws IOException
+    {
+        CoinRecord last = vault().scanRevoked(after, pageSize, coins);
+
+        return last == null ? null : last.getCoinId();
     }
 }
@@ -1,102 +1,18 @@
 package core;
 
-import java.io.File;
-import java.io.IOException;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.List;
 
 /**
- * Dynamically list the supported countries.
+ * List the supported countries.
  * <p>
- * Much help on how to do this came originally from
- * https://dzone.com/articles/get-all-classes-within-package.
+ * The countries come from the {@link CurrencyRegistry}, which is built once rather
+ * than by scanning the classpath on every call.
  */
 public class SupportMatrix
 {
     // TODO:Add a way to show essential and optional fields upon request
     public static ArrayList<String> supportMatrix()
     {
-        ArrayList<String> countries = new ArrayList<>();
-
-        try
-        {
-            for (Class currency : getClasses("currency"))
-            {
-                countries.add(currency.getSimpleName());
-            }
-        }
-        catch (ClassNotFoundException | IOException | URISyntaxException exception)
-        {
-
-        }
-
-        return countries;
-    }
-
-    /**
-     * Scans all classes accessible from the context class loader which belong to the given package and subpackages.
-     *
-     * @param packageName The base package
-     * @return The classes
-     * @throws ClassNotFoundException Specified class is missing
-     * @throws IOException IO Exception
-     */
-    private static Class[] getClasses(String packageName)
-            throws ClassNotFoundException, IOException, URISyntaxException
-    {
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-        assert classLoader != null;
-        String path = packageName.replace('.', '/');
-        Enumeration<URL> resources = classLoader.getResources(path);
-        List<File> dirs = new ArrayList<>();
-        while (resources.hasMoreElements())
-        {
-            URL resource = resources.nextElement();
-            dirs.add(new File(resource.toURI()));
-        }
-        ArrayList<Class> classes = new ArrayList<>();
-        for (File directory : dirs)
-        {
-            classes.addAll(findClasses(directory, packageName));
-        }
-        return classes.toArray(new Class[classes.size()]);
-    }
-
-    /**
-     * Recursive method used to find all classes in a given directory and subdirs.
-     *
-     * @param directory   The base directory
-     * @param packageName The package name for classes found inside the base directory
-     * @return The classes
-     * @throws ClassNotFoundException Specified class was not found
-     */
-    private static List<Class> findClasses(File directory, String packageName) throws ClassNotFoundException
-    {
-        List<Class> classes = new ArrayList<>();
-        if (!directory.exists())
-        {
-            return classes;
-        }
-
-        File[] files = directory.listFiles();
-
-        assert files != null;
-
-        for (File file : files)
-        {
-            if (file.isDirectory())
-            {
-                assert !file.getName().contains(".");
-                classes.addAll(findClasses(file, packageName + "." + file.getName()));
-            }
-            else if (file.getName().endsWith(".class"))
-            {
-                classes.add(Class.forName(packageName + '.' + file.getName().substring(0, file.getName().length() - 6)));
-            }
-        }
-        return classes;
+        return new ArrayList<>(CurrencyRegistry.countries());
     }
 }
@@ -0,0 +1,287 @@
+package core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything about validating a currency that does not depend on the input values,
+ * worked out once per {@link Money} implementation and shared by all its instances.
+ * <p>
+ * The plan holds the essential fields, the {@link FieldValidator}s of the currency, with those
+ * of the essential fields by ordinal, a resolved handle for every {@code validate_<fieldName>}
+ * method, and hence which optional fields are accepted. Validating a request is then a plain
+ * loop over the fields without any reflection lookups.
+ */
+final class ValidationPlan
+{
+    private static final String VALIDATOR_PREFIX = "validate_";
+
+    private static final MethodType VALIDATOR_TYPE = MethodType.methodType(FieldResult.class, Money.class);
+
+    private static final ConcurrentHashMap<Class<?>, ValidationPlan> PLANS = new ConcurrentHashMap<>();
+
+    // The essential fields in the order they were defined
+    private final List<Field> essentialFields;
+    private final Set<String> essentialNames;
+
+    // Fields that declare a validator, callable or not
+    private final Set<String> declaredValidators;
+
+    // Callable validators by field name
+    private final Map<String, MethodHandle> validators;
+
+    // Stateless validators by field name, and those of the essential fields by ordinal
+    private final Map<String, FieldValidator> fieldValidators;
+    private final FieldValidator[] essentialValidators;
+
+    // Errors for essential fields that have no validator, by field name
+    private final Map<String, String> missingValidators;
+
+    // Set if the definition of the fields is broken
+    private final String incompleteDefinition;
+    private final String fieldClash;
+
+    private ValidationPlan(List<Field> essentialFields, Set<String> essentialNames,
+                           Set<String> declaredValidators, Map<String, MethodHandle> validators,
+                           Map<String, FieldValidator> fieldValidators, Map<String, String> missingValidators,
+                           String incompleteDefinition, String fieldClash)
+    {
+        this.essentialFields = Collections.unmodifiableList(essentialFields);
+        this.essentialNames = Collections.unmodifiableSet(essentialNames);
+        this.declaredValidators = Collections.unmodifiableSet(declaredValidators);
+        this.validators = Collections.unmodifiableMap(validators);
+        this.fieldValidators = Collections.unmodifiableMap(fieldValidators);
+        this.essentialValidators = new FieldValidator[essentialFields.size()];
+
+        for (int ordinal = 0; ordinal < essentialValidators.length; ordinal++)
+        {
+            essentialValidators[ordinal] = fieldValidators.get(essentialFields.get(ordinal).getName());
+        }
+        this.missingValidators = Collections.unmodifiableMap(missingValidators);
+        this.incompleteDefinition = incompleteDefinition;
+        this.fieldClash = fieldClash;
+    }
+
+    /**
+     * The plan of a currency, compiled the first time the currency is used
+     *
+     * @param money An instance of the currency
+     * @return The plan shared by all instances of the currency
+     */
+    static ValidationPlan of(Money money)
+    {
+        ValidationPlan plan = PLANS.get(money.getClass());
+
+        if (plan == null)
+        {
+            plan = PLANS.computeIfAbsent(money.getClass(), currency ->
+                    compile(money.getClass(), currency.getSimpleName(), money.essentialFields(), money.validators()));
+        }
+
+        return plan;
+    }
+
+    /**
+     * Works out the plan of a currency
+     *
+     * @param currency        The class of the currency, whose {@code validate_<fieldName>} methods are resolved
+     * @param currencyName    The name of the currency, for error messages
+     * @param essentialFields The essential fields of the currency
+     * @param fieldValidators The stateless validators of the currency, by field name
+     * @return The plan
+     */
+    static ValidationPlan compile(Class<? extends Money> currency, String currencyName,
+                                  List<Field> essentialFields, Map<String, FieldValidator> fieldValidators)
+    {
+        /*
+         * Resolve every validator the currency declares, essential or optional.
+         * As before, a validator is a method without parameters declared by the currency itself.
+         * It must return a FieldResult to be callable
+         */
+        HashSet<String> declaredValidators = new HashSet<>();
+        HashMap<String, MethodHandle> validators = new HashMap<>();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        for (Method method : currency.getDeclaredMethods())
+        {
+            if (!method.getName().startsWith(VALIDATOR_PREFIX) || method.getParameterCount() != 0)
+            {
+                continue;
+            }
+
+            String fieldName = method.getName().substring(VALIDATOR_PREFIX.length());
+
+            declaredValidators.add(fieldName);
+
+            try
+            {
+                if (!FieldResult.class.isAssignableFrom(method.getReturnType()))
+                {
+                    continue;
+                }
+
+                MethodHandle validator = lookup.unreflect(method);
+
+                if (Modifier.isStatic(method.getModifiers()))
+                {
+                    validator = MethodHandles.dropArguments(validator, 0, currency);
+                }
+
+                validators.put(fieldName, validator.asType(VALIDATOR_TYPE));
+            }
+            catch (IllegalAccessException ex)
+            {
+                // Declared but not public. The field fails validation, as it did with Method.invoke
+            }
+        }
+
+        /*
+         * Validators given as objects come before validator methods of the same field
+         */
+        HashMap<String, FieldValidator> statelessValidators = new HashMap<>();
+
+        for (Map.Entry<String, FieldValidator> validator : fieldValidators.entrySet())
+        {
+            declaredValidators.add(validator.getKey());
+
+            if (validator.getValue() != null)
+            {
+                statelessValidators.put(validator.getKey(), validator.getValue());
+            }
+        }
+
+        List<Field> fields = new ArrayList<>();
+        Set<String> essentialNames = new HashSet<>();
+        LinkedHashMap<String, String> missingValidators = new LinkedHashMap<>();
+        String incompleteDefinition = null;
+        String fieldClash = null;
+
+        for (Field field : essentialFields)
+        {
+            /*
+             * Ensure that each field has a 'name' attribute
+             */
+            String fieldName = field == null ? null : field.getName();
+
+            if (fieldName == null)
+            {
+                incompleteDefinition = "The 'name' attribute of one or more fields has not been defined";
+                continue;
+            }
+
+            if (!essentialNames.add(fieldName))
+            {
+                fieldClash = String.format("Cannot define %s more than once as an essential field", fieldName);
+                continue;
+            }
+
+            fields.add(field);
+
+            if (!declaredValidators.contains(fieldName))
+            {
+                /*
+                    Validation method is missing which implies that this field is not valid.
+                    Mask this from the end user
+                */
+                missingValidators.put(fieldName,
+                        String.format("'%s' is not a valid input parameter for %s",
+                                fieldName, currencyName
+                        )
+                );
+            }
+        }
+
+        return new ValidationPlan(fields, essentialNames, declaredValidators, validators,
+                statelessValidators, missingValidators, incompleteDefinition, fieldClash);
+    }
+
+    /**
+     * The essential fields, in the order they were defined
+     *
+     * @return The essential fields
+     */
+    List<Field> essentialFields()
+    {
+        return essentialFields;
+    }
+
+    /**
+     * Checks whether a field is essential
+     *
+     * @param fieldName The name of the field
+     * @return True if the field is one of the essential fields
+     */
+    boolean isEssential(String fieldName)
+    {
+        return essentialNames.contains(fieldName);
+    }
+
+    /**
+     * The validator of a field
+     *
+     * @param fieldName The name of the field
+     * @return The validator, or null if the field has none
+     */
+    MethodHandle validator(String fieldName)
+    {
+        return validators.get(fieldName);
+    }
+
+    /**
+     * The stateless validator of a field
+     *
+     * @param ordinal   The ordinal of the field among the fields that were entered, essential fields first
+     * @param fieldName The name of the field
+     * @return The validator, or null if the field has none
+     */
+    FieldValidator fieldValidator(int ordinal, String fieldName)
+    {
+        return ordinal < essentialValidators.length ? essentialValidators[ordinal] : fieldValidators.get(fieldName);
+    }
+
+    /**
+     * Checks whether a field declares a validator, which is what makes it acceptable as an optional field
+     *
+     * @param fieldName The name of the field
+     * @return True if the currency has a {@link FieldValidator} or declares {@code validate_<fieldName>}
+     */
+    boolean hasValidator(String fieldName)
+    {
+        return declaredValidators.contains(fieldName);
+    }
+
+    /**
+     * Errors for the essential fields that have no validator
+     *
+     * @return The error messages by field name
+     */
+    Map<String, String> missingValidators()
+    {
+        return missingValidators;
+    }
+
+    /**
+     * Why the field definitions are incomplete
+     *
+     * @return The reason, or null if every field has a name
+     */
+    String incompleteDefinition()
+    {
+        return incompleteDefinition;
+    }
+
+    /**
+     * Why the essential fields clash with each other
+     *
+     * @return The reason, or null if there is no clash
+     */
+    String fieldClash()
+    {
+        return fieldClash;
+    }
+}
@@ -0,0 +1,195 @@
+package core;
+
+import java.util.regex.Pattern;
+
+import static core.utils.MoneyUtils.isTrivial;
+
+/**
+ * Common {@link FieldValidator}s. They hold nothing but their settings, such as a compiled
+ * pattern, and may be shared by any number of fields and threads.
+ */
+public final class Validators
+{
+    private static final FieldValidator ACCEPT = FieldResult::valid;
+
+    private Validators()
+    {
+    }
+
+    /**
+     * Accepts any value
+     *
+     * @return The validator
+     */
+    public static FieldValidator accept()
+    {
+        return ACCEPT;
+    }
+
+    /**
+     * Accepts any value, with a warning
+     *
+     * @param warningMessage The warning
+     * @return The validator
+     */
+    public static FieldValidator acceptWithWarning(String warningMessage)
+    {
+        return (field, inputValue) -> FieldResult.valid(field, inputValue).withWarning(warningMessage);
+    }
+
+    /**
+     * Accepts values that match a pattern as a whole
+     *
+     * @param pattern      The pattern, compiled once
+     * @param errorMessage Why a value that does not match is not valid
+     * @return The validator
+     */
+    public static FieldValidator matching(Pattern pattern, String errorMessage)
+    {
+        return (field, inputValue) -> pattern.matcher(inputValue).matches()
+                ? FieldResult.valid(field, inputValue)
+                : FieldResult.invalid(field, inputValue, errorMessage);
+    }
+
+    /**
+     * Accepts values of at least a given length
+     *
+     * @param length       The shortest length accepted
+     * @param errorMessage Why a shorter value is not valid
+     * @return The validator
+     */
+    public static FieldValidator minLength(int length, String errorMessage)
+    {
+        return (field, inputValue) -> inputValue.length() >= length
+                ? FieldResult.valid(field, inputValue)
+                : FieldResult.invalid(field, inputValue, errorMessage);
+    }
+
+    /**
+     * Accepts values of at most a given length
+     *
+     * @param length       The longest length accepted
+     * @param errorMessage Why a longer value is not valid
+     * @return The validator
+     */
+    public static FieldValidator maxLength(int length, String errorMessage)
+    {
+        return (field, inputValue) -> inputValue.length() <= length
+                ? FieldResult.valid(field, inputValue)
+                : FieldResult.invalid(field, inputValue, errorMessage);
+    }
+
+    /**
+     * Accepts numbers whose last digit is their Luhn check digit, as in card and many account numbers
+     *
+     * @param errorMessage Why a value that fails the check is not valid
+     * @return The validator
+     */
+    public static FieldValidator luhn(String errorMessage)
+    {
+        return (field, inputValue) -> isLuhn(inputValue)
+                ? FieldResult.valid(field, inputValue)
+                : FieldResult.invalid(field, inputValue, errorMessage);
+    }
+
+    /**
+     * Accepts IBANs whose check digits are right, by the ISO 7064 MOD 97-10 check
+     *
+     * @param errorMessage Why a value that fails the check is not valid
+     * @return The validator
+     */
+    public static FieldValidator iban(String errorMessage)
+    {
+        return (field, inputValue) -> isIban(inputValue)
+                ? FieldResult.valid(field, inputValue)
+                : FieldResult.invalid(field, inputValue, errorMessage);
+    }
+
+    /**
+     * Rejects trivial values such as 123456 or ABCDEF
+     *
+     * @param errorMessage Why a trivial value is not valid
+     * @return The validator
+     */
+    public static FieldValidator notTrivial(String errorMessage)
+    {
+        return (field, inputValue) -> isTrivial(inputValue)
+                ? FieldResult.invalid(field, inputValue, errorMessage)
+                : FieldResult.valid(field, inputValue);
+    }
+
+    private static boolean isLuhn(String number)
+    {
+        if (number.length() < 2)
+        {
+            return false;
+        }
+
+        int sum = 0;
+        boolean doubled = false;
+
+        for (int i = number.length() - 1; i >= 0; i--)
+        {
+            char c = number.charAt(i);
+
+            if (c < '0' || c > '9')
+            {
+                return false;
+            }
+
+            int digit = c - '0';
+
+            if (doubled)
+            {
+                digit *= 2;
+
+                if (digit > 9)
+                {
+                    digit -= 9;
+                }
+            }
+
+            sum += digit;
+            doubled = !doubled;
+        }
+
+        return sum % 10 == 0;
+    }
+
+    private static boolean isIban(String iban)
+    {
+        int length = iban.length();
+
+        if (length < 5 || length > 34)
+        {
+            return false;
+        }
+
+        /*
+         * The country code and check digits move to the end, letters count as 10 to 35,
+         * and the whole number must leave 1 when divided by 97. The remainder is worked
+         * out as the digits go, so the number never needs to be built
+         */
+        int remainder = 0;
+
+        for (int i = 0; i < length; i++)
+        {
+            char c = iban.charAt((i + 4) % length);
+
+            if (c >= '0' && c <= '9')
+            {
+                remainder = (remainder * 10 + (c - '0')) % 97;
+            }
+            else if (c >= 'A' && c <= 'Z')
+            {
+                remainder = (remainder * 100 + (c - 'A' + 10)) % 97;
+            }
+            else
+            {
+                return false;
+            }
+        }
+
+        return remainder == 1;
+    }
+}
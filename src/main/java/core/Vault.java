@@ -0,0 +1,161 @@
+package core;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * Lifecycle of the vault in which the coins are kept.
+ * <p>
+ * The vault should be opened once when the application starts so that the
+ * storage is ready before the first request arrives. It is configured through
+ * the application's settings, or system properties, for example {@code -Dvault.pool.size=8}:
+ * <ul>
+ * <li>{@value #BACKEND_PROPERTY}: where the coins are kept, "sqlite" (the default) for an SQLite
+ * database, or "log" for append-only segment files indexed in memory</li>
+ * <li>{@value #POOL_SIZE_PROPERTY}: the number of database connections to keep open</li>
+ * <li>{@value #COMMIT_BATCH_PROPERTY}: the most coins to commit at once</li>
+ * <li>{@value #COMMIT_WINDOW_PROPERTY}: how many milliseconds to wait for a batch to fill up</li>
+ * <li>{@value #INDEX_SIZE_PROPERTY}: how many coins the database's in-memory index of serial numbers is sized for</li>
+ * <li>{@value #LOG_SYNC_PROPERTY}: when the log is synced to the disk, "batch" (the default) once per
+ * group commit, "write" once per coin, or "interval" in the background</li>
+ * <li>{@value #LOG_SYNC_INTERVAL_PROPERTY}: how many milliseconds apart the log is synced under "interval"</li>
+ * </ul>
+ */
+public final class Vault
+{
+    public static final String BACKEND_PROPERTY = "vault.backend";
+    public static final String POOL_SIZE_PROPERTY = "vault.pool.size";
+    public static final String COMMIT_BATCH_PROPERTY = "vault.commit.batch";
+    public static final String COMMIT_WINDOW_PROPERTY = "vault.commit.window";
+    public static final String INDEX_SIZE_PROPERTY = "vault.index.size";
+    public static final String LOG_SYNC_PROPERTY = "vault.log.sync";
+    public static final String LOG_SYNC_INTERVAL_PROPERTY = "vault.log.sync.interval";
+
+    private static final String SQLITE = "sqlite";
+    private static final String LOG = "log";
+
+    // The folder that holds the log-structured vault
+    private static final String LOG_LOCATION = "silo/coins.log";
+
+    private static final String DEFAULT_BACKEND = SQLITE;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int DEFAULT_COMMIT_BATCH = 256;
+    private static final long DEFAULT_COMMIT_WINDOW = 2;
+    private static final long DEFAULT_INDEX_SIZE = 1_000_000L;
+    private static final LogVault.Sync DEFAULT_LOG_SYNC = LogVault.Sync.BATCH;
+    private static final long DEFAULT_LOG_SYNC_INTERVAL = 100;
+
+    private Vault()
+    {
+    }
+
+    /**
+     * Opens the vault with the settings given as system properties
+     *
+     * @throws SQLException Error creating the tables or opening the connections
+     * @throws IOException  Error opening the log
+     */
+    public static void open() throws SQLException, IOException
+    {
+        open(System::getProperty);
+    }
+
+    /**
+     * Opens the vault with the given settings
+     *
+     * @param settings Looks up a setting by name, giving null if it is not set
+     * @throws IllegalArgumentException A setting is not valid
+     * @throws SQLException             Error creating the tables or opening the connections
+     * @throws IOException              Error opening the log
+     */
+    public static void open(UnaryOperator<String> settings) throws SQLException, IOException
+    {
+        String backend = settings.apply(BACKEND_PROPERTY);
+
+        int batchSize = (int) setting(settings, COMMIT_BATCH_PROPERTY, DEFAULT_COMMIT_BATCH);
+        long windowMillis = setting(settings, COMMIT_WINDOW_PROPERTY, DEFAULT_COMMIT_WINDOW);
+
+        switch (backend == null ? DEFAULT_BACKEND : backend.trim())
+        {
+            case SQLITE:
+                int poolSize = (int) setting(settings, POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+                long indexSize = setting(settings, INDEX_SIZE_PROPERTY, DEFAULT_INDEX_SIZE);
+
+                Store.open(() -> new SqliteVault(poolSize, batchSize, windowMillis, indexSize));
+                break;
+
+            case LOG:
+                LogVault.Sync sync = logSync(settings.apply(LOG_SYNC_PROPERTY));
+                long syncIntervalMillis = setting(settings, LOG_SYNC_INTERVAL_PROPERTY, DEFAULT_LOG_SYNC_INTERVAL);
+
+                Store.open(() -> new LogVault(LOG_LOCATION, batchSize, windowMillis, sync, syncIntervalMillis));
+                break;
+
+            default:
+                throw new IllegalArgumentException(String.format("Unknown vault backend %s", backend));
+        }
+    }
+
+    /**
+     * Writes out any queued coins and closes the vault
+     */
+    public static void close()
+    {
+        Store.close();
+    }
+
+    /**
+     * Reads the sync policy of the log
+     *
+     * @param value The setting, or null if it is not set
+     * @return The sync policy
+     * @throws IllegalArgumentException The setting is not a sync policy
+     */
+    private static LogVault.Sync logSync(String value)
+    {
+        if (value == null)
+        {
+            return DEFAULT_LOG_SYNC;
+        }
+
+        try
+        {
+            return LogVault.Sync.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new IllegalArgumentException(
+                    String.format("%s must be write, batch or interval, not %s", LOG_SYNC_PROPERTY, value), ex);
+        }
+    }
+
+    /**
+     * Reads a numeric setting
+     *
+     * @param settings     Looks up a setting by name
+     * @param name         The name of the setting
+     * @param defaultValue The value to use if the setting is not set
+     * @return The value of the setting
+     * @throws IllegalArgumentException The setting is not a number
+     */
+    private static long setting(UnaryOperator<String> settings, String name, long defaultValue)
+    {
+        String value = settings.apply(name);
+
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException(String.format("%s must be a number, not %s", name, value), ex);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * A long-lived connection to the vault, leased out of the {@link VaultPool}.
+ * <p>
+ * Each connection keeps its own prepared statements so that a given SQL string
+ * is only ever compiled once per connection. Closing a lease hands the connection
+ * back to the pool rather than closing it.
+ */
+final class VaultConnection implements AutoCloseable
+{
+    private final VaultPool pool;
+    private final Connection connection;
+
+    // Prepared statements by their SQL text
+    private final HashMap<String, PreparedStatement> statements = new HashMap<>();
+
+    // Set whenever the connection misbehaves so that the pool replaces it
+    private boolean broken;
+
+    VaultConnection(VaultPool pool, Connection connection)
+    {
+        this.pool = pool;
+        this.connection = connection;
+    }
+
+    /**
+     * Provides a prepared statement for the given SQL, preparing it on first use
+     *
+     * @param sql The SQL to be prepared
+     * @return A cached statement with its parameters cleared
+     * @throws SQLException Error preparing the statement
+     */
+    PreparedStatement prepare(String sql) throws SQLException
+    {
+        PreparedStatement statement = statements.get(sql);
+
+        if (statement == null)
+        {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        else
+        {
+            statement.clearParameters();
+        }
+
+        return statement;
+    }
+
+    /**
+     * The underlying JDBC connection
+     *
+     * @return The raw connection
+     */
+    Connection connection()
+    {
+        return connection;
+    }
+
+    /**
+     * Flags the connection as unusable. It will be discarded when the lease is closed
+     */
+    void markBroken()
+    {
+        broken = true;
+    }
+
+    boolean isBroken()
+    {
+        return broken;
+    }
+
+    /**
+     * Closes the statements and the underlying connection for good
+     */
+    void destroy()
+    {
+        for (PreparedStatement statement : statements.values())
+        {
+            try
+            {
+                statement.close();
+            }
+            catch (SQLException ignored)
+            {
+                // The connection is being discarded anyway
+            }
+        }
+
+        statements.clear();
+
+        try
+        {
+            connection.close();
+        }
+        catch (SQLException se)
+        {
+            se.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the connection to the pool
+     */
+    @Override
+    public void close()
+    {
+        pool.release(this);
+    }
+}
@@ -0,0 +1,158 @@
+package core;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of long-lived connections to the vault.
+ * <p>
+ * All the connections are opened up front so that no request ever pays for
+ * connection setup. A request that finds the pool empty waits for a connection
+ * to be handed back rather than opening a new one.
+ */
+final class VaultPool
+{
+    // How long to wait for a free connection before giving up
+    private static final long BORROW_TIMEOUT_SECONDS = 30;
+
+    // How long SQLite waits on a locked database before reporting it busy
+    private static final int BUSY_TIMEOUT_MILLISECONDS = 5000;
+
+    private final String url;
+    private final ArrayBlockingQueue<VaultConnection> idle;
+
+    private volatile boolean closed;
+
+    /**
+     * Opens a pool of connections
+     *
+     * @param url  The JDBC url of the vault
+     * @param size The number of connections to keep open
+     * @throws SQLException Error opening any of the connections
+     */
+    VaultPool(String url, int size) throws SQLException
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException(String.format("Invalid vault pool size %d", size));
+        }
+
+        this.url = url;
+        this.idle = new ArrayBlockingQueue<>(size);
+
+        for (int i = 0; i < size; i++)
+        {
+            idle.add(open());
+        }
+    }
+
+    /**
+     * Leases a connection. Close the lease to return it to the pool
+     *
+     * @return A connection that is exclusive to the caller until closed
+     * @throws SQLException The pool is closed or no connection became free in time
+     */
+    VaultConnection borrow() throws SQLException
+    {
+        if (closed)
+        {
+            throw new SQLException("The vault has been closed");
+        }
+
+        try
+        {
+            VaultConnection connection = idle.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            if (connection == null)
+            {
+                throw new SQLException("Timed out waiting for a vault connection");
+            }
+
+            return connection;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new SQLException("Interrupted while waiting for a vault connection", ex);
+        }
+    }
+
+    /**
+     * Hands a connection back, replacing it if it has been flagged as broken
+     *
+     * @param connection The connection being returned
+     */
+    void release(VaultConnection connection)
+    {
+        if (closed)
+        {
+            connection.destroy();
+            return;
+        }
+
+        if (connection.isBroken())
+        {
+            connection.destroy();
+
+            try
+            {
+                connection = open();
+            }
+            catch (SQLException se)
+            {
+                /*
+                 * The pool shrinks by one. Subsequent borrowers will wait on the
+                 * remaining connections
+                 */
+                se.printStackTrace();
+                return;
+            }
+        }
+
+        idle.offer(connection);
+    }
+
+    /**
+     * Closes all idle connections. Leased connections are closed as they are returned
+     */
+    void close()
+    {
+        closed = true;
+
+        VaultConnection connection;
+
+        while ((connection = idle.poll()) != null)
+        {
+            connection.destroy();
+        }
+    }
+
+    /**
+     * Opens a fresh connection to the vault
+     *
+     * @return The new connection
+     * @throws SQLException Error opening the connection
+     */
+    private VaultConnection open() throws SQLException
+    {
+        Connection connection = DriverManager.getConnection(url);
+
+        try (Statement statement = connection.createStatement())
+        {
+            statement.execute(String.format("PRAGMA busy_timeout = %d", BUSY_TIMEOUT_MILLISECONDS));
+
+            /*
+             * In WAL mode, FULL syncs the log on every commit, so that a committed
+             * coin survives a power loss just as it did with the rollback journal
+             */
+            statement.execute("PRAGMA synchronous = FULL");
+        }
+
+        return new VaultConnection(this, connection);
+    }
+}
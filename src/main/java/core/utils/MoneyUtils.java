@@ -5,15 +5,26 @@ import exceptions.StorageEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * String Encoder and decoder
  */
 public class MoneyUtils
 {
+    private static final ThreadLocal<MessageDigest> SHA3_512 = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA3-512");
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    });
+
     /**
      * Encode using Base64 a given string
      *
@@ -42,52 +53,30 @@ public class MoneyUtils
 
     /**
      * Get the SHA256 encoding of a given
+     * <p>
+     * Despite the name, the digest is SHA3-512, which is what coin ids have always been hashed with.
+     * Each thread reuses its own digest
      *
      * @param text The String to encode to Sha256
      * @return The encoded string
+     * @throws IllegalStateException SHA3-512 is not available
      */
     public static String sha256(String text)
     {
-        try
-        {
-            MessageDigest digest = MessageDigest.getInstance("SHA3-512");
-            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
-
-            return Base64.getEncoder().withoutPadding().encodeToString(hash);
-        }
-        catch (Exception exception)
-        {
-            exception.printStackTrace();
-        }
+        byte[] hash = SHA3_512.get().digest(text.getBytes(StandardCharsets.UTF_8));
 
-        return null;
+        return Base64.getEncoder().withoutPadding().encodeToString(hash);
     }
 
     /**
-     * Check if an input value is a trivial entity such as 123456 or ABCDEF
+     * Check if an input value is a trivial entity such as 123456, ABCDEF, aaaa or qwerty
      *
      * @param input The value to be checked
      * @return true if value is trivial, false otherwise
+     * @see TrivialValueDetector
      */
     public static boolean isTrivial(String input)
     {
-        if (input.isEmpty())
-        {
-            return true;
-        }
-
-        Set<Integer> differences = new HashSet<>();
-
-        char[] inputArray = input.toCharArray();
-
-        for (int i = 0; i < inputArray.length - 1; i++)
-        {
-            int x = Character.getNumericValue(inputArray[i]);
-            int y = Character.getNumericValue(inputArray[i + 1]);
-
-            differences.add(x - y);
-        }
-
-        return differences.size() == 1;
+        return TrivialValueDetector.standard().isTrivial(input);
     }
 }
\ No newline at end of file
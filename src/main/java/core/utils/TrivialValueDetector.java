@@ -0,0 +1,458 @@
+package core.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Detects trivial values such as 123456, aaaa, qwerty or n/a, which people type when they do
+ * not want to give a real value.
+ * <p>
+ * A value is trivial if, ignoring case and surrounding spaces, it is
+ * <ul>
+ * <li>empty</li>
+ * <li>one character repeated, such as 0000 or aa, or a unit of up to {@value #MAX_PERIOD} characters
+ * repeated. A unit of digits needs to appear twice, such as 1212, but any other unit three times, such
+ * as abcabcabc, since names such as Nana, Mimi or Ayaya repeat a unit twice</li>
+ * <li>a run of at least {@value #MIN_DIGIT_SEQUENCE} digits or {@value #MIN_LETTER_SEQUENCE} letters
+ * that steps up or down by the same 1 or 2 each time, such as 123, 2468 or fedc. A run stepping by 1
+ * may go on from 9 to 0 or from z to a, such as 7890. Other steps are not trivial, since names such
+ * as Ana and Bob, or a number such as 147, are real values</li>
+ * <li>a walk of at least {@value #MIN_WALK} keys along one row of the keyboard, such as qwer or
+ * lkjh</li>
+ * <li>of at least {@value #MIN_LOW_ENTROPY} characters but only two distinct ones, such as 100010</li>
+ * <li>on the blocklist</li>
+ * </ul>
+ * Every check runs in the same single pass over the value, which stops as soon as no check can
+ * still match, and none of them allocates. The blocklist is held as a trie flattened into arrays,
+ * so a lookup is one array walk per character.
+ * <p>
+ * The {@link #standard()} detector reads its blocklist from every {@value #BLOCKLIST} resource on
+ * the classpath, one value per line, so deployments may add their own. Detectors are immutable
+ * and may be shared by any number of threads.
+ */
+public final class TrivialValueDetector
+{
+    static final String BLOCKLIST = "META-INF/trivial-values";
+
+    static final int MAX_PERIOD = 3;
+    static final int MIN_DIGIT_SEQUENCE = 3;
+    static final int MIN_LETTER_SEQUENCE = 4;
+    static final int MAX_STEP = 2;
+    static final int MIN_WALK = 4;
+    static final int MIN_LOW_ENTROPY = 6;
+
+    private static final String[] KEYBOARD_ROWS = {"1234567890", "qwertyuiop", "asdfghjkl", "zxcvbnm"};
+
+    // The keyboard row and column of each ASCII character, or -1
+    private static final byte[] KEY_ROW = new byte[128];
+    private static final byte[] KEY_COLUMN = new byte[128];
+
+    static
+    {
+        Arrays.fill(KEY_ROW, (byte) -1);
+        Arrays.fill(KEY_COLUMN, (byte) -1);
+
+        for (int row = 0; row < KEYBOARD_ROWS.length; row++)
+        {
+            for (int column = 0; column < KEYBOARD_ROWS[row].length(); column++)
+            {
+                char key = KEYBOARD_ROWS[row].charAt(column);
+                KEY_ROW[key] = (byte) row;
+                KEY_COLUMN[key] = (byte) column;
+            }
+        }
+    }
+
+    // Character classes for sequences
+    private static final int OTHER = 0;
+    private static final int DIGIT = 1;
+    private static final int LETTER = 2;
+
+    private static final int NO_STEP = Integer.MIN_VALUE;
+
+    /*
+     * The blocklist trie. The edges leaving state s are edgeLabels and edgeTargets from
+     * firstEdge[s] up to firstEdge[s + 1], sorted by label. State 0 is the root
+     */
+    private final int[] firstEdge;
+    private final char[] edgeLabels;
+    private final int[] edgeTargets;
+    private final long[] accepting;
+
+    private static final class Holder
+    {
+        private static final TrivialValueDetector STANDARD = loadStandard();
+    }
+
+    /**
+     * Creates a detector
+     *
+     * @param blocklist The values that are trivial whatever their shape, matched ignoring case and
+     *                  surrounding spaces
+     */
+    public TrivialValueDetector(Collection<String> blocklist)
+    {
+        /*
+         * Build a plain trie of sorted, distinct entries, then flatten it breadth first
+         */
+        TreeSet<String> entries = new TreeSet<>();
+
+        for (String entry : blocklist)
+        {
+            String normalized = entry.trim().toLowerCase(Locale.ROOT);
+
+            if (!normalized.isEmpty())
+            {
+                entries.add(normalized);
+            }
+        }
+
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        BitSet terminal = new BitSet();
+        children.add(new TreeMap<>());
+
+        for (String entry : entries)
+        {
+            int state = 0;
+
+            for (int i = 0; i < entry.length(); i++)
+            {
+                Integer next = children.get(state).get(entry.charAt(i));
+
+                if (next == null)
+                {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    children.get(state).put(entry.charAt(i), next);
+                }
+
+                state = next;
+            }
+
+            terminal.set(state);
+        }
+
+        int states = children.size();
+        int edges = states - 1;
+
+        firstEdge = new int[states + 1];
+        edgeLabels = new char[edges];
+        edgeTargets = new int[edges];
+        accepting = new long[(states + 63) / 64];
+
+        int edge = 0;
+
+        for (int state = 0; state < states; state++)
+        {
+            firstEdge[state] = edge;
+
+            for (Map.Entry<Character, Integer> child : children.get(state).entrySet())
+            {
+                edgeLabels[edge] = child.getKey();
+                edgeTargets[edge] = child.getValue();
+                edge++;
+            }
+
+            if (terminal.get(state))
+            {
+                accepting[state >>> 6] |= 1L << state;
+            }
+        }
+
+        firstEdge[states] = edge;
+    }
+
+    /**
+     * The detector whose blocklist is read from the classpath, built the first time it is used
+     *
+     * @return The shared detector
+     */
+    public static TrivialValueDetector standard()
+    {
+        return Holder.STANDARD;
+    }
+
+    /**
+     * Checks if a value is trivial
+     *
+     * @param value The value to be checked
+     * @return true if the value is trivial, false otherwise
+     */
+    public boolean isTrivial(CharSequence value)
+    {
+        int start = 0;
+        int end = value.length();
+
+        while (start < end && Character.isWhitespace(value.charAt(start)))
+        {
+            start++;
+        }
+
+        while (end > start && Character.isWhitespace(value.charAt(end - 1)))
+        {
+            end--;
+        }
+
+        int length = end - start;
+
+        if (length == 0)
+        {
+            return true;
+        }
+
+        // A unit of p characters repeats while periodic bit p is set
+        int periodic = 0;
+
+        // The units that only repeat twice, which is trivial for digits alone
+        int twiceOnly = 0;
+
+        for (int period = 1; period <= MAX_PERIOD && 2 * period <= length; period++)
+        {
+            periodic |= 1 << period;
+
+            if (period > 1 && 3 * period > length)
+            {
+                twiceOnly |= 1 << period;
+            }
+        }
+
+        boolean fewDistinct = length >= MIN_LOW_ENTROPY;
+        char firstDistinct = 0;
+        char secondDistinct = 0;
+        int distinct = 0;
+
+        boolean sequence = length >= Math.min(MIN_DIGIT_SEQUENCE, MIN_LETTER_SEQUENCE);
+        int sequenceClass = OTHER;
+        int step = NO_STEP;
+
+        boolean walk = length >= MIN_WALK;
+        int walkRow = -1;
+        int walkDirection = 0;
+
+        int state = 0;
+
+        char previous = 0;
+
+        for (int i = start; i < end; i++)
+        {
+            char c = Character.toLowerCase(value.charAt(i));
+            int offset = i - start;
+
+            if ((twiceOnly & periodic) != 0 && (c < '0' || c > '9'))
+            {
+                periodic &= ~twiceOnly;
+            }
+
+            if (periodic != 0)
+            {
+                for (int period = 1; period <= MAX_PERIOD; period++)
+                {
+                    if ((periodic & (1 << period)) != 0 && offset >= period
+                            && c != Character.toLowerCase(value.charAt(i - period)))
+                    {
+                        periodic &= ~(1 << period);
+                    }
+                }
+            }
+
+            if (fewDistinct)
+            {
+                if (distinct == 0)
+                {
+                    firstDistinct = c;
+                    distinct = 1;
+                }
+                else if (c != firstDistinct && (distinct == 1 || c != secondDistinct))
+                {
+                    if (distinct == 1)
+                    {
+                        secondDistinct = c;
+                        distinct = 2;
+                    }
+                    else
+                    {
+                        fewDistinct = false;
+                    }
+                }
+            }
+
+            if (sequence)
+            {
+                int characterClass = classOf(c);
+
+                if (offset == 0)
+                {
+                    sequenceClass = characterClass;
+                    sequence = characterClass == DIGIT && length >= MIN_DIGIT_SEQUENCE
+                            || characterClass == LETTER && length >= MIN_LETTER_SEQUENCE;
+                }
+                else if (characterClass != sequenceClass)
+                {
+                    sequence = false;
+                }
+                else
+                {
+                    int base = characterClass == DIGIT ? 10 : 26;
+                    int difference = c - previous;
+
+                    // Only a step of 1 goes round, from 9 to 0 or z to a and back
+                    if (difference == 1 - base)
+                    {
+                        difference = 1;
+                    }
+                    else if (difference == base - 1)
+                    {
+                        difference = -1;
+                    }
+
+                    if (difference == 0 || Math.abs(difference) > MAX_STEP)
+                    {
+                        sequence = false;
+                    }
+                    else if (step == NO_STEP)
+                    {
+                        step = difference;
+                    }
+                    else if (difference != step)
+                    {
+                        sequence = false;
+                    }
+                }
+            }
+
+            if (walk)
+            {
+                int row = c < 128 ? KEY_ROW[c] : -1;
+
+                if (row < 0 || offset > 0 && row != walkRow)
+                {
+                    walk = false;
+                }
+                else if (offset > 0)
+                {
+                    int direction = KEY_COLUMN[c] - KEY_COLUMN[previous];
+
+                    if (direction != 1 && direction != -1 || walkDirection != 0 && direction != walkDirection)
+                    {
+                        walk = false;
+                    }
+
+                    walkDirection = direction;
+                }
+
+                walkRow = row;
+            }
+
+            if (state >= 0)
+            {
+                state = next(state, c);
+            }
+
+            previous = c;
+
+            if (periodic == 0 && !fewDistinct && !sequence && !walk && state < 0)
+            {
+                return false;
+            }
+        }
+
+        return periodic != 0 || fewDistinct || sequence || walk || state >= 0 && isAccepting(state);
+    }
+
+    private static int classOf(char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return DIGIT;
+        }
+
+        if (c >= 'a' && c <= 'z')
+        {
+            return LETTER;
+        }
+
+        return OTHER;
+    }
+
+    /**
+     * Follows the edge of a state labelled with a character
+     *
+     * @param state The state
+     * @param c     The character
+     * @return The next state, or -1 if no entry continues with the character
+     */
+    private int next(int state, char c)
+    {
+        int low = firstEdge[state];
+        int high = firstEdge[state + 1] - 1;
+
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            char label = edgeLabels[middle];
+
+            if (label < c)
+            {
+                low = middle + 1;
+            }
+            else if (label > c)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return edgeTargets[middle];
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean isAccepting(int state)
+    {
+        return (accepting[state >>> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * Builds the standard detector from every blocklist on the classpath
+     *
+     * @return The detector
+     */
+    private static TrivialValueDetector loadStandard()
+    {
+        List<String> blocklist = new ArrayList<>();
+
+        try
+        {
+            Enumeration<URL> lists = TrivialValueDetector.class.getClassLoader().getResources(BLOCKLIST);
+
+            while (lists.hasMoreElements())
+            {
+                try (InputStream stream = lists.nextElement().openStream();
+                     BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8)))
+                {
+                    String line;
+
+                    while ((line = reader.readLine()) != null)
+                    {
+                        if (!line.trim().startsWith("#"))
+                        {
+                            blocklist.add(line);
+                        }
+                    }
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new IllegalStateException("Could not load the blocklist of trivial values", ex);
+        }
+
+        return new TrivialValueDetector(blocklist);
+    }
+}
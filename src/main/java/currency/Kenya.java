@@ -1,6 +1,10 @@
 package currency;
 
+import core.Field;
+import core.FieldResult;
+import core.FieldValidator;
 import core.Money;
+import core.Validators;
 import exceptions.FieldClashException;
 import exceptions.FieldValidationException;
 import exceptions.IncompleteFieldDefinitionException;
@@ -9,13 +13,22 @@ import exceptions.InvalidInputException;
 import javax.crypto.NoSuchPaddingException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-
-import static core.utils.MoneyUtils.isTrivial;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 public class Kenya extends Money
 {
+    private static final List<Field> ESSENTIAL_FIELDS = Collections.unmodifiableList(Arrays.asList(
+            new Field("accountNumber", "Account Number"),
+            new Field("taxCertificate", "KRA PIN Certificate"),
+            new Field("accountHolderName", "Account Holder Name")
+    ));
+
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
 
     public Kenya(HashMap<String, String> values) throws
             NoSuchMethodException, InvalidInputException,
@@ -51,211 +64,59 @@ public class Kenya extends Money
     }
 
     @Override
-    public ArrayList essentialFields()
+    public List<Field> essentialFields()
     {
-        ArrayList<HashMap<String, String>> fields = new ArrayList<>();
-
-        HashMap<String, String> accountNumber = new HashMap<>();
-        accountNumber.put("name", "accountNumber");
-        accountNumber.put("label", "Account Number");
-
-        HashMap<String, String> accountHolderName = new HashMap<>();
-        accountHolderName.put("name", "accountHolderName");
-        accountHolderName.put("label", "Account Holder Name");
-
-        HashMap<String, String> taxCertificate = new HashMap<>();
-        taxCertificate.put("name", "taxCertificate");
-        taxCertificate.put("label", "KRA PIN Certificate");
-
-        fields.add(accountNumber);
-        fields.add(taxCertificate);
-        fields.add(accountHolderName);
-
-        return fields;
+        return ESSENTIAL_FIELDS;
     }
 
     /*
-     * We have to validate all the essential fields
-     * The syntax is validate_<fieldName>()
-     * The method returns a HashMap of the validation of the values.
-     * If you add a validation method of a non-essential field, it implies
-     * that the validation is an optional field. For example, you will see
-     * that there is a validate_BIC() method, yet there is no BIC defined as an
-     * essential field. This means that BIC is an optional field whose value
-     * will be accepted
+     * We have to validate all the essential fields.
+     * validators() gives the validator of each field by name. Each one is built once
+     * and shared by every request, so it must only use the field and value it is given.
+     * If you add a validator for a non-essential field, it implies that the field is
+     * optional. For example, you will see that there is a validator for BIC, yet there
+     * is no BIC defined as an essential field. This means that BIC is an optional field
+     * whose value will be accepted
      */
 
-    public HashMap<?, ?> validate_accountHolderName()
-    {
-        HashMap<String, Object> validationResults = new HashMap<>();
-
-        String currentMethodName = Thread.currentThread().getStackTrace()[1].getMethodName();
-
-        String fieldName = currentMethodName.replace("validate_", "");
-
-        for (HashMap<String, Object> value : values)
-        {
-            if (value.get("name").equals(fieldName))
-            {
-                String inputValue = (String) value.get("value");
-                String label = (String) value.get("label");
-
-                validationResults.put("label", label);
-                validationResults.put("field", fieldName);
-                validationResults.put("inputValue", inputValue);
-
-// TODO: Put here your custom validations for this field
+    private static final FieldValidator ACCOUNT_HOLDER_NAME =
+            Validators.minLength(3, "Must be at least 3 characters long")
+                    .then(Validators.notTrivial("Trivial value detected"));
 
-                if(inputValue.length() < 3)
-                {
-                    validationResults.put("validity", false);
-                    validationResults.put("errorMessage", "Must be at least 3 characters long");
-                }
-                else if (isTrivial(inputValue))
-                {
-                    validationResults.put("validity", false);
-                    validationResults.put("errorMessage", "Trivial value detected");
-                }
-                else
-                {
-                    validationResults.put("validity", true);
-                }
-            }
-        }
-
-        return validationResults;
-    }
-
-    public HashMap<?, ?> validate_accountNumber()
-    {
-        HashMap<String, Object> validationResults = new HashMap<>();
-
-        String currentMethodName = Thread.currentThread().getStackTrace()[1].getMethodName();
-
-        String fieldName = currentMethodName.replace("validate_", "");
-
-        for (HashMap<String, Object> value : values)
-        {
-            if (value.get("name").equals(fieldName))
-            {
-                String inputValue = (String) value.get("value");
-                String label = (String) value.get("label");
-
-                validationResults.put("label", label);
-                validationResults.put("field", fieldName);
-                validationResults.put("inputValue", inputValue);
-
-// TODO: Put here your custom validations for this field
-
-                String regex = "\\d+";
-
-                if(!inputValue.matches(regex))
-                {
-                    validationResults.put("validity", false);
-                    validationResults.put("errorMessage", "Enter a valid account number");
-                }
-                else if (isTrivial(inputValue))
-                {
-                    validationResults.put("validity", false);
-                    validationResults.put("errorMessage", "Trivial value detected");
-                }
-                else
-                {
+    private static final FieldValidator ACCOUNT_NUMBER =
+            Validators.matching(DIGITS, "Enter a valid account number")
+                    .then(Validators.notTrivial("Trivial value detected"))
                     // Add a derived field if you want to
-                    validationResults.put("accountNumberCode", inputValue.substring(0, 4));
-                    validationResults.put("validity", true);
-                }
-            }
-        }
-
-        return validationResults;
-    }
-
-    public HashMap<?, ?> validate_accountHolderAddress()
-    {
-        HashMap<String, Object> validationResults = new HashMap<>();
-
-        String currentMethodName = Thread.currentThread().getStackTrace()[1].getMethodName();
+                    .then((field, inputValue) -> FieldResult.valid(field, inputValue)
+                            .withDerived("accountNumberCode", inputValue.substring(0, 4)));
 
-        String fieldName = currentMethodName.replace("validate_", "");
+    // TODO: Put here your custom validations for this field
+    private static final FieldValidator ACCOUNT_HOLDER_ADDRESS = Validators.accept();
 
-        for (HashMap<String, Object> value : values)
-        {
-            if (value.get("name").equals(fieldName))
-            {
-                String inputValue = (String) value.get("value");
-                String label = (String) value.get("label");
+    // TODO: Put here your custom validations for this field
+    private static final FieldValidator BIC = Validators.acceptWithWarning("Should be derived!");
 
-                validationResults.put("label", label);
-
-// TODO: Put here your custom validations for this field
+    //TODO: Work on this
+    private static final FieldValidator TAX_CERTIFICATE =
+            Validators.acceptWithWarning("Will be verified by the tax authorities");
 
-                validationResults.put("field", fieldName);
-                validationResults.put("inputValue", inputValue);
-                validationResults.put("validity", true);
-            }
-        }
+    private static final Map<String, FieldValidator> VALIDATORS;
 
-        return validationResults;
-    }
-
-    public HashMap<?, ?> validate_BIC()
+    static
     {
-        HashMap<String, Object> validationResults = new HashMap<>();
-
-        String currentMethodName = Thread.currentThread().getStackTrace()[1].getMethodName();
-
-        String fieldName = currentMethodName.replace("validate_", "");
-
-        for (HashMap<String, Object> value : values)
-        {
-            if (value.get("name").equals(fieldName))
-            {
-                String inputValue = (String) value.get("value");
-                String label = (String) value.get("label");
-
-                validationResults.put("label", label);
-
-// TODO: Put here your custom validations for this field
-
-                validationResults.put("field", fieldName);
-                validationResults.put("inputValue", inputValue);
-                validationResults.put("validity", true);
-                validationResults.put("warningMessage", "Should be derived!");
-            }
-        }
-
-        return validationResults;
+        HashMap<String, FieldValidator> validators = new HashMap<>();
+        validators.put("accountHolderName", ACCOUNT_HOLDER_NAME);
+        validators.put("accountNumber", ACCOUNT_NUMBER);
+        validators.put("accountHolderAddress", ACCOUNT_HOLDER_ADDRESS);
+        validators.put("BIC", BIC);
+        validators.put("taxCertificate", TAX_CERTIFICATE);
+
+        VALIDATORS = Collections.unmodifiableMap(validators);
     }
 
-    //TODO: Work on this
-    public HashMap<?, ?> validate_taxCertificate()
+    @Override
+    protected Map<String, FieldValidator> validators()
     {
-        HashMap<String, Object> validationResults = new HashMap<>();
-
-        String currentMethodName = Thread.currentThread().getStackTrace()[1].getMethodName();
-
-        String fieldName = currentMethodName.replace("validate_", "");
-
-        for (HashMap<String, Object> value : values)
-        {
-            if (value.get("name").equals(fieldName))
-            {
-                String inputValue = (String) value.get("value");
-                String label = (String) value.get("label");
-
-                validationResults.put("label", label);
-
-// TODO: Put here your custom validations for this field
-
-                validationResults.put("field", fieldName);
-                validationResults.put("inputValue", inputValue);
-                validationResults.put("warningMessage", "Will be verified by the tax authorities");
-                validationResults.put("validity", true);
-            }
-        }
-
-        return validationResults;
+        return VALIDATORS;
     }
-
 }
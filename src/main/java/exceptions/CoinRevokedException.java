@@ -0,0 +1,34 @@
+package exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The coin that the values make has been revoked, so it cannot be minted again
+ */
+@ResponseStatus(HttpStatus.GONE)
+public class CoinRevokedException extends Exception
+{
+    private static final long serialVersionUID = 1L;
+
+    public static final String MESSAGE = "This coin has been revoked";
+
+    private final String coinId;
+
+    public CoinRevokedException(String coinId)
+    {
+        super(MESSAGE);
+
+        this.coinId = coinId;
+    }
+
+    /**
+     * The id of the revoked coin
+     *
+     * @return The coin id
+     */
+    public String getCoinId()
+    {
+        return coinId;
+    }
+}
@@ -0,0 +1,24 @@
+package exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The service cannot handle the request yet, for instance because the encryption
+ * keys are still being generated
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceNotReadyException extends Exception
+{
+    private static final long serialVersionUID = 1L;
+
+    public ServiceNotReadyException(String message)
+    {
+        super(message);
+
+        Logger.getLogger("global").log(Level.WARNING, message);
+    }
+}
@@ -0,0 +1,195 @@
+package services;
+
+import core.CurrencyRegistry;
+import core.FieldResult;
+import core.Money;
+import exceptions.CoinRevokedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Mints the coins of a batch upload.
+ * <p>
+ * The records are read one at a time with the streaming parser and handed to a shared pool
+ * that validates and encrypts them in parallel. The coins are then queued on the vault's
+ * writer, which commits them in batches. Each result is written back as soon as its coin is
+ * committed. At most {@value #MAX_IN_FLIGHT} records of an upload are in progress at any time,
+ * so the memory used does not depend on the size of the upload.
+ */
+final class BatchMinter
+{
+    private static final Logger LOGGER = Logger.getLogger(BatchMinter.class.getName());
+
+    // The most records of one upload that are being minted at the same time
+    private static final int MAX_IN_FLIGHT = 1024;
+
+    // Validates and encrypts the records of every upload
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "batch-minter-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            }
+    );
+
+    private final ResultLines results;
+
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+    /**
+     * Prepares to mint an upload
+     *
+     * @param output Where to write the results
+     * @throws IOException Error opening the output
+     */
+    BatchMinter(OutputStream output) throws IOException
+    {
+        this.results = new ResultLines(output);
+    }
+
+    /**
+     * Mints every record of an upload, returning once all the results have been written
+     *
+     * @param input The records
+     * @throws IOException Error reading the records or writing the results
+     */
+    void mint(InputStream input) throws IOException
+    {
+        try (RecordReader reader = new RecordReader(input))
+        {
+            RecordReader.Record record;
+
+            while (!results.failed() && (record = reader.next()) != null)
+            {
+                if (record.values == null)
+                {
+                    results.write(record.number, ResultLines.error(record.errorMessage));
+                    continue;
+                }
+
+                submit(record.number, record.values);
+            }
+        }
+        finally
+        {
+            // Wait for the records still being minted
+            inFlight.acquireUninterruptibly(MAX_IN_FLIGHT);
+            inFlight.release(MAX_IN_FLIGHT);
+        }
+
+        results.flush();
+    }
+
+    /**
+     * Mints a record on the pool, writing its result once it is done
+     *
+     * @param record The number of the record
+     * @param values The values of the record by field name
+     */
+    private void submit(int record, HashMap<String, String> values)
+    {
+        inFlight.acquireUninterruptibly();
+
+        CompletableFuture
+                .supplyAsync(() -> mint(values), WORKERS)
+                .thenCompose(result -> result)
+                // Leave the vault's writer thread as soon as the coin is committed
+                .whenCompleteAsync((result, ex) ->
+                {
+                    try
+                    {
+                        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+
+                        if (cause instanceof CoinRevokedException)
+                        {
+                            result = ResultLines.error(cause.getMessage());
+                        }
+                        else if (ex != null)
+                        {
+                            LOGGER.log(Level.SEVERE, String.format("Could not mint record %d", record), ex);
+                            result = ResultLines.error("The coin could not be minted");
+                        }
+
+                        results.write(record, result);
+                    }
+                    finally
+                    {
+                        inFlight.release();
+                    }
+                }, WORKERS);
+    }
+
+    /**
+     * Validates a record and, if it is valid, encrypts it and queues it for storage
+     *
+     * @param values The values of the record by field name
+     * @return The result, completed once the coin has been committed
+     */
+    private static CompletableFuture<ResultLines.Line> mint(HashMap<String, String> values)
+    {
+        String countryName = values.remove("country");
+
+        HashMap<String, String> countryError = MintController.countryError(countryName);
+
+        if (countryError != null)
+        {
+            return CompletableFuture.completedFuture(line ->
+            {
+                for (Map.Entry<String, String> entry : countryError.entrySet())
+                {
+                    line.writeStringField(entry.getKey(), entry.getValue());
+                }
+            });
+        }
+
+        try
+        {
+            Money money = CurrencyRegistry.create(countryName, values);
+
+            List<FieldResult> results = money.validate();
+
+            if (!money.isValid(results))
+            {
+                return CompletableFuture.completedFuture(line ->
+                {
+                    line.writeFieldName("validation");
+                    line.writeObject(money.validationReport(results));
+                });
+            }
+
+            return money.saveCoinAsync(results).thenApply(coin ->
+                    coin == null
+                            ? ResultLines.error("The coin could not be saved")
+                            : line ->
+                    {
+                        line.writeFieldName("coin");
+                        line.writeRawValue(coin);
+                    });
+        }
+        catch (Exception ex)
+        {
+            CompletableFuture<ResultLines.Line> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package services;
+
+import core.CurrencyRegistry;
+import core.FieldResult;
+import core.Money;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Validates the records of a batch upload without minting them.
+ * <p>
+ * Records are read in chunks of {@value #CHUNK_SIZE}. Each chunk is split across a fork-join
+ * pool while the next chunk is being read, so at most two chunks are held at a time. Only the
+ * cached validation plans of the currencies are used; nothing is encrypted or stored.
+ * The results are written in the order of the records, followed by a summary line counting
+ * the records and, for each field, the records in which it had an error.
+ */
+final class BatchValidator
+{
+    private static final Logger LOGGER = Logger.getLogger(BatchValidator.class.getName());
+
+    private static final int CHUNK_SIZE = 256;
+
+    // Chunks are split until they are this small
+    private static final int SPLIT_THRESHOLD = 16;
+
+    // Shared by every upload
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The outcome of validating a record
+     */
+    private static final class Checked
+    {
+        private final ResultLines.Line line;
+        private final boolean valid;
+
+        // The fields with an error
+        private final Set<String> failedFields;
+
+        private Checked(ResultLines.Line line, boolean valid, Set<String> failedFields)
+        {
+            this.line = line;
+            this.valid = valid;
+            this.failedFields = failedFields;
+        }
+    }
+
+    /**
+     * Validates a range of records of a chunk, splitting it in halves while it is large
+     */
+    private static final class Validation extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final RecordReader.Record[] records;
+        private final Checked[] checked;
+        private final int from;
+        private final int to;
+
+        private Validation(RecordReader.Record[] records, Checked[] checked, int from, int to)
+        {
+            this.records = records;
+            this.checked = checked;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= SPLIT_THRESHOLD)
+            {
+                for (int i = from; i < to; i++)
+                {
+                    checked[i] = check(records[i]);
+                }
+
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+
+            invokeAll(
+                    new Validation(records, checked, from, middle),
+                    new Validation(records, checked, middle, to)
+            );
+        }
+    }
+
+    private final ResultLines results;
+
+    private int records;
+    private int valid;
+
+    // The number of records with an error in each field, by field name
+    private final TreeMap<String, Integer> errorsByField = new TreeMap<>();
+
+    /**
+     * Prepares to validate an upload
+     *
+     * @param output Where to write the results
+     * @throws IOException Error opening the output
+     */
+    BatchValidator(OutputStream output) throws IOException
+    {
+        this.results = new ResultLines(output);
+    }
+
+    /**
+     * Validates every record of an upload, returning once all the results have been written
+     *
+     * @param input The records
+     * @throws IOException Error reading the records or writing the results
+     */
+    void validate(InputStream input) throws IOException
+    {
+        try (RecordReader reader = new RecordReader(input))
+        {
+            Validation pending = null;
+
+            do
+            {
+                RecordReader.Record[] chunk = readChunk(reader);
+
+                Validation next = null;
+
+                if (chunk.length > 0)
+                {
+                    next = new Validation(chunk, new Checked[chunk.length], 0, chunk.length);
+                    POOL.execute(next);
+                }
+
+                if (pending != null)
+                {
+                    pending.join();
+                    report(pending);
+                }
+
+                pending = next;
+            }
+            while (pending != null && !results.failed());
+        }
+
+        results.write(line ->
+        {
+            line.writeObjectFieldStart("summary");
+            line.writeNumberField("records", records);
+            line.writeNumberField("valid", valid);
+            line.writeNumberField("invalid", records - valid);
+            line.writeObjectField("errorsByField", errorsByField);
+            line.writeEndObject();
+        });
+
+        results.flush();
+    }
+
+    /**
+     * Reads up to a chunk of records
+     *
+     * @param reader The reader of the upload
+     * @return The records, none at the end of the upload
+     * @throws IOException Error reading the upload
+     */
+    private static RecordReader.Record[] readChunk(RecordReader reader) throws IOException
+    {
+        List<RecordReader.Record> chunk = new ArrayList<>(CHUNK_SIZE);
+        RecordReader.Record record;
+
+        while (chunk.size() < CHUNK_SIZE && (record = reader.next()) != null)
+        {
+            chunk.add(record);
+        }
+
+        return chunk.toArray(new RecordReader.Record[0]);
+    }
+
+    /**
+     * Writes the results of a validated chunk and adds them to the summary
+     *
+     * @param chunk The validated chunk
+     */
+    private void report(Validation chunk)
+    {
+        for (int i = 0; i < chunk.records.length; i++)
+        {
+            Checked checked = chunk.checked[i];
+
+            records++;
+
+            if (checked.valid)
+            {
+                valid++;
+            }
+
+            for (String field : checked.failedFields)
+            {
+                errorsByField.merge(field, 1, Integer::sum);
+            }
+
+            results.write(chunk.records[i].number, checked.line);
+        }
+    }
+
+    /**
+     * Validates a record
+     *
+     * @param record The record
+     * @return The outcome
+     */
+    private static Checked check(RecordReader.Record record)
+    {
+        if (record.values == null)
+        {
+            return new Checked(ResultLines.error(record.errorMessage), false, Collections.emptySet());
+        }
+
+        HashMap<String, String> values = record.values;
+
+        String countryName = values.remove("country");
+
+        HashMap<String, String> countryError = MintController.countryError(countryName);
+
+        if (countryError != null)
+        {
+            return new Checked(line ->
+            {
+                for (Map.Entry<String, String> entry : countryError.entrySet())
+                {
+                    line.writeStringField(entry.getKey(), entry.getValue());
+                }
+            }, false, Collections.singleton("country"));
+        }
+
+        try
+        {
+            Money money = CurrencyRegistry.create(countryName, values);
+
+            List<FieldResult> results = money.validate();
+
+            Set<String> failedFields = new TreeSet<>(money.getErrorsByFieldName().keySet());
+
+            for (FieldResult result : results)
+            {
+                if (!result.isValid())
+                {
+                    failedFields.add(result.getField().getName());
+                }
+            }
+
+            ArrayList<HashMap<String, Object>> report = money.validationReport(results);
+            boolean isValid = money.isValid(results);
+
+            return new Checked(line ->
+            {
+                line.writeBooleanField("valid", isValid);
+                line.writeFieldName("validation");
+                line.writeObject(report);
+            }, isValid, failedFields);
+        }
+        catch (Exception ex)
+        {
+            LOGGER.log(Level.SEVERE, String.format("Could not validate record %d", record.number), ex);
+
+            return new Checked(ResultLines.error("The record could not be validated"), false, Collections.emptySet());
+        }
+    }
+}
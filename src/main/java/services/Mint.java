@@ -1,5 +1,8 @@
 package services;
 
+import core.CurrencyRegistry;
+import core.KeyRing;
+import core.LockSmith;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
@@ -9,8 +12,28 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 @SpringBootApplication
 public class Mint
 {
-    public static void main(String[] args)
+    public static void main(String[] args) throws Exception
     {
+        /*
+         * Resolve the supported currencies once, failing fast if any is broken
+         */
+        CurrencyRegistry.load();
+
+        /*
+         * Generate any missing keys without holding up startup. Minting reports
+         * the service as unavailable until they are in place
+         */
+        LockSmith.provisionInBackground();
+
+        /*
+         * Pick up rotated encryption keys without a restart
+         */
+        KeyRing.watch();
+
+        /*
+         * The vault is opened by VaultConfiguration, with the application's settings,
+         * before any requests are accepted
+         */
         SpringApplication.run(
                 Mint.class, args
         );
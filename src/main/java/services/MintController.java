@@ -1,57 +1,104 @@
 package services;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import core.CoinDisplay;
+import core.CoinLedger;
+import core.CoinRecord;
+import core.CurrencyRegistry;
+import core.FieldResult;
+import core.Json;
+import core.KeyRing;
 import core.Money;
-import core.SupportMatrix;
+import exceptions.CoinRevokedException;
 import exceptions.FieldValidationException;
+import exceptions.ServiceNotReadyException;
 import exceptions.StorageEncodingException;
 import exceptions.UndefinedValidatorException;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.spec.InvalidKeySpecException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @RestController
 public class MintController
 {
+    private static final Logger LOGGER = Logger.getLogger(MintController.class.getName());
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    // Spring creates a single controller, so every request shares this display
+    private final CoinDisplay display;
+
+    /**
+     * Instantiate the controller together with the shared encryption classes
+     *
+     * @throws NoSuchPaddingException   Exception in the data in the encryption and/or decryption key files
+     * @throws NoSuchAlgorithmException No such algorithm provided for encryption and/or decryption
+     * @throws NoSuchProviderException  Invalid encryption/decryption with regards to the encryption and/or decryption key files
+     */
+    public MintController() throws NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException
+    {
+        display = new CoinDisplay();
+    }
+
+    /**
+     * Reports whether the service is ready to mint and show coins
+     *
+     * @param pretty   Present to indent the response for people to read
+     * @param response The response, into which the readiness is written
+     * @throws IOException              Error writing the response
+     * @throws ServiceNotReadyException The encryption keys are not in place yet
+     */
+    @RequestMapping("/ready")
+    public void ready(@RequestParam(value = "pretty", required = false) String pretty,
+                      HttpServletResponse response) throws IOException, ServiceNotReadyException
+    {
+        requireReady();
+
+        HashMap<String, Boolean> readiness = new HashMap<>();
+        readiness.put("ready", true);
+
+        respond(response, readiness, pretty);
+    }
+
     /**
      * Displays the countries that are currently supported
      *
-     * @return The list of supported countries
+     * @param pretty   Present to indent the response for people to read
+     * @param response The response, into which the countries are written
+     * @throws IOException Error writing the response
      */
     @RequestMapping("/supportMatrix")
-    public String supportMatrix()
+    public void supportMatrix(@RequestParam(value = "pretty", required = false) String pretty,
+                              HttpServletResponse response) throws IOException
     {
-        Gson gson =
-                new GsonBuilder().setPrettyPrinting().create();
-
-        return gson.toJson(SupportMatrix.supportMatrix());
+        // Serialized once when the currencies were registered
+        respondRaw(response, CurrencyRegistry.supportMatrixJson(pretty != null));
     }
 
     /**
      * Validate input data
-     *
-     * @param data The input data that is to be validated
-     * @return A map of the validation status of the input values
+     * <p>
+     * The request holds the input data that is to be validated. The response holds the validation
+     * status of the input values, indented if the request has a "pretty" parameter
      * <p>
      * Example input:
      * {
@@ -96,79 +143,81 @@ public class MintController
      * \"accountNumber\": \"1234567S8900987654321\",\"accountHolderName\": \"Arthur Buliva\",
      * \"BIC\": \"SCBKENLXXXX\"}"
      * localhost:8080/validate
+     *
+     * @param request  The request, whose body is read as a stream
+     * @param pretty   Present to indent the response for people to read
+     * @param response The response, into which the validation results are streamed
      * @throws InvocationTargetException   Exception when calling the necessary method for validation.storage
      * @throws IllegalAccessException      Should not access the class being invoked
      * @throws UndefinedValidatorException The validator method for a field has not been defined
      * @throws NoSuchMethodException       When invoking the necessary Money class
      * @throws InstantiationException      When trying to initialize the necessary Money implementation
      * @throws ClassNotFoundException      When trying to initialize the necessary Money implementation
-     * @throws IOException                 General IO exception when reading the encryption and/or decryption key files
+     * @throws IOException                 Error reading the input data or writing the response
      */
     @RequestMapping("/validate")
-    public String validate(@RequestBody String data) throws
+    public void validate(HttpServletRequest request,
+                         @RequestParam(value = "pretty", required = false) String pretty,
+                         HttpServletResponse response) throws
             IOException, IllegalAccessException, UndefinedValidatorException,
             InvocationTargetException, NoSuchMethodException, ClassNotFoundException, InstantiationException
     {
-        ArrayList supportMatrix = SupportMatrix.supportMatrix();
-
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-
-        ObjectMapper mapper = new ObjectMapper();
-
-        HashMap<String, String> map = mapper.readValue(data, new TypeReference<Map<String, String>>()
-        {
-        });
+        HashMap<String, String> map = Json.readStrings(request.getInputStream());
 
         String countryName = map.get("country");
 
-        if (countryName == null) // No country specified
-        {
-            HashMap<String, String> missingCountry = new HashMap<>();
-
-            missingCountry.put(
-                    "errorMessage",
-                    String.format(
-                            "No country has been specified. Supported countries are %s",
-                            supportMatrix
-                    )
-            );
-
-            return gson.toJson(missingCountry);
-        }
+        HashMap<String, String> countryError = countryError(countryName);
 
-        if (!supportMatrix.contains(countryName)) // Country is not supported
+        if (countryError != null)
         {
-            HashMap<String, String> unsupportedCountry = new HashMap<>();
-
-            unsupportedCountry.put("country", countryName);
-            unsupportedCountry.put(
-                    "errorMessage",
-                    String.format(
-                            "%s is unsupported. Supported countries are %s",
-                            countryName, supportMatrix
-                    )
-            );
-
-            return gson.toJson(unsupportedCountry);
+            respond(response, countryError, pretty);
+            return;
         }
 
         map.remove("country");
 
         // Dynamically determine the appropriate Money instance to invoke the validation against
-        Constructor<?> constructor = Class.forName(String.format("currency.%s", countryName))
-                .getConstructor(HashMap.class);
-        Object instance = constructor.newInstance(map);
+        Money money = CurrencyRegistry.create(countryName, map);
 
-        Money money = (Money) instance;
+        respond(response, money.validateValues(), pretty);
+    }
 
-        return gson.toJson(money.validateValues());
+    /**
+     * Validate many records at once, for instance as a dry run before /save/batch
+     * <p>
+     * The request holds either one JSON record per line or a JSON array of records, each like
+     * the input of /validate. Nothing is encrypted or stored. One line is written back per record,
+     * in order, with the number of the record counting from 1, whether it is valid and its
+     * validation results (or an "errorMessage"). A final line summarizes the upload.
+     * <p>
+     * Example output:
+     * {"record":1,"valid":true,"validation":[...]}
+     * {"record":2,"valid":false,"validation":[...]}
+     * {"summary":{"records":2,"valid":1,"invalid":1,"errorsByField":{"accountNumber":1}}}
+     * <p>
+     * How to test using curl:
+     * curl -X POST -H "Content-type: application/x-ndjson" --data-binary @coins.ndjson localhost:8080/validate/batch
+     *
+     * @param request  The request, whose body is read as a stream
+     * @param response The response, into which the results are streamed
+     * @throws IOException Error reading the records or writing the results
+     */
+    @RequestMapping("/validate/batch")
+    public void validateAll(HttpServletRequest request, HttpServletResponse response) throws IOException
+    {
+        response.setContentType(ResultLines.CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+
+        new BatchValidator(response.getOutputStream()).validate(request.getInputStream());
     }
 
     /**
      * Save input data
-     *
-     * @param data The input data that is to be saved
-     * @return A map of the status of the input values including the coin id upon successful save
+     * <p>
+     * The request holds the input data that is to be saved. The response holds the status of the
+     * input values including the coin id upon successful save. The validation results of invalid
+     * input data are indented if the request has a "pretty" parameter. If the values make a coin
+     * that has been revoked, the response is 410 Gone with an "errorMessage" and the "coinId"
      * <p>
      * Example input:
      * {
@@ -213,6 +262,10 @@ public class MintController
      * \"accountNumber\": \"1234567S8900987654321\",\"accountHolderName\": \"Arthur Buliva\",
      * \"BIC\": \"SCBKENLXXXX\"}"
      * localhost:8080/save
+     *
+     * @param request  The request, whose body is read as a stream
+     * @param pretty   Present to indent the validation results for people to read
+     * @param response The response, into which the coin or the validation results are written
      * @throws InvocationTargetException   Exception when calling the necessary method for validation.storage
      * @throws IllegalAccessException      Should not access the class being invoked
      * @throws UndefinedValidatorException The validator method for a field has not been defined
@@ -225,94 +278,403 @@ public class MintController
      * @throws StorageEncodingException    An exception occurred during the encoding process
      * @throws InvalidKeyException         Invalid encryption/decryption key
      * @throws InvalidKeySpecException     Invalid encryption/decryption key specification
-     * @throws IOException                 General IO exception when reading the encryption and/or decryption key files
+     * @throws IOException                 Error reading the encryption keys, reading the input data or writing the response
      * @throws NoSuchPaddingException      Exception in the data in the encryption and/or decryption key files
      * @throws NoSuchAlgorithmException    No such algorithm provided for encryption and/or decryption
      * @throws NoSuchProviderException     Invalid encryption/decryption with regards to the encryption and/or decryption key files
+     * @throws GeneralSecurityException    Any other exception while encrypting the coin
+     * @throws ServiceNotReadyException    The encryption keys are not in place yet
      */
     @RequestMapping("/save")
-    public String mintCoin(@RequestBody String data)
+    public void mintCoin(HttpServletRequest request,
+                         @RequestParam(value = "pretty", required = false) String pretty,
+                         HttpServletResponse response)
             throws InvocationTargetException, IllegalAccessException, UndefinedValidatorException,
             IOException, NoSuchMethodException, InstantiationException, ClassNotFoundException, BadPaddingException,
             NoSuchAlgorithmException, FieldValidationException, IllegalBlockSizeException, StorageEncodingException,
-            InvalidKeyException, InvalidKeySpecException, NoSuchProviderException, NoSuchPaddingException
+            InvalidKeyException, InvalidKeySpecException, NoSuchProviderException, NoSuchPaddingException,
+            GeneralSecurityException, ServiceNotReadyException
     {
-        ObjectMapper mapper = new ObjectMapper();
+        requireReady();
 
-        HashMap<String, String> map = mapper.readValue(data, new TypeReference<Map<String, String>>()
-        {
-        });
+        /*
+         * Parse, validate and save once. The saved coin is returned as it was built,
+         * rather than being read back from the store and decrypted
+         */
+        HashMap<String, String> map = Json.readStrings(request.getInputStream());
 
         String countryName = map.get("country");
 
-        String validity = validate(data);
+        HashMap<String, String> countryError = countryError(countryName);
 
-        Gson gson = new Gson();
-
-        Type listType = new TypeToken<ArrayList<HashMap>>()
+        if (countryError != null)
         {
-        }.getType();
+            respond(response, countryError, pretty);
+            return;
+        }
 
-        ArrayList<HashMap> validated = gson.fromJson(validity, listType);
+        map.remove("country");
 
-        HashMap<String, String> coinData = new HashMap<>();
+        // Dynamically determine the appropriate Money instance to invoke the validation against
+        Money money = CurrencyRegistry.create(countryName, map);
+
+        List<FieldResult> results = money.validate();
 
-        for (Object values : validated)
+        // No need to proceed if any of these values is not valid
+        if (!money.isValid(results))
         {
-            HashMap inputValues = (HashMap) values;
+            respond(response, money.validationReport(results), pretty);
+            return;
+        }
 
-            Boolean isValid = (Boolean) inputValues.get("validity");
+        String coin;
 
-            // No need to proceed if any of these values is not valid
-            if (!isValid)
-            {
-                return validity;
-            }
+        try
+        {
+            coin = money.saveCoin(results);
+        }
+        catch (CoinRevokedException ex)
+        {
+            HashMap<String, String> revoked = new HashMap<>();
+            revoked.put("coinId", ex.getCoinId());
+            revoked.put("errorMessage", ex.getMessage());
 
-            coinData.put((String) inputValues.get("field"), (String) inputValues.get("inputValue"));
+            response.setStatus(HttpServletResponse.SC_GONE);
+            respond(response, revoked, pretty);
+            return;
         }
 
-        // Dynamically determine the appropriate Money instance to invoke the validation against
-        Constructor<?> constructor = Class.forName(String.format("currency.%s", countryName))
-                .getConstructor(HashMap.class);
-        Object instance = constructor.newInstance(coinData);
+        if (coin == null)
+        {
+            HashMap<String, String> notSaved = new HashMap<>();
+            notSaved.put("errorMessage", "The coin could not be saved");
 
-        Money money = (Money) instance;
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            respond(response, notSaved, pretty);
+            return;
+        }
 
-        CoinDisplay display = new CoinDisplay();
-        return display.showCoin(money.saveCoin());
+        // Already serialized when the coin was built
+        respondRaw(response, coin);
+    }
+
+    /**
+     * Save many coins at once
+     * <p>
+     * The request holds one JSON record per line, each like the input of /save. The records are
+     * read as a stream and minted in parallel, and one line is written back per record as soon as
+     * it is done, so the order of the response lines may differ from the order of the records.
+     * Each response line carries the number of its record, counting from 1, and one of
+     * "coin" (the saved coin), "validation" (the validation results of an invalid record) or
+     * "errorMessage".
+     * <p>
+     * Example output:
+     * {"record":2,"validation":[{"field":"accountNumber","inputValue":"12x","errorMessage":"Enter a valid account number",...}]}
+     * {"record":1,"coin":[{"field":"accountNumber","inputValue":"1234567890",...},{"coinId":"..."}]}
+     * <p>
+     * How to test using curl:
+     * curl -X POST -H "Content-type: application/x-ndjson" --data-binary @coins.ndjson localhost:8080/save/batch
+     *
+     * @param request  The request, whose body is read as a stream
+     * @param response The response, into which the results are streamed
+     * @throws IOException              Error reading the records or writing the results
+     * @throws ServiceNotReadyException The encryption keys are not in place yet
+     */
+    @RequestMapping("/save/batch")
+    public void mintCoins(HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServiceNotReadyException
+    {
+        requireReady();
+
+        response.setContentType(ResultLines.CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+
+        new BatchMinter(response.getOutputStream()).mint(request.getInputStream());
     }
 
     /**
      * Display the values of a coin of a given coin id
      *
-     * @param data The JSON data containing the coin id
-     *             <p>
-     *             Example usage:
-     *             curl -X POST -H "Content-type: application/json" -d
-     *             "{\"cGNDWFlETzFaUUlPYndkWTRETmJ0MTJ1aS9UQUR2OEI3SXpNOTFZV1Mvbk1tdXhkaGZCSVVJK2pSa3AwZndWMDdGTDZxRUw2S3MxeFZ0TFhVaUR3d2c\"}"
-     *             localhost:8080/show
-     * @return The associated input data retrieved from storage
-     * @throws IOException              General IO exception when reading the encryption and/or decryption key files
+     * @param request  The request, whose body is the JSON data containing the coin id
+     *                 <p>
+     *                 Example usage:
+     *                 curl -X POST -H "Content-type: application/json" -d
+     *                 "{\"cGNDWFlETzFaUUlPYndkWTRETmJ0MTJ1aS9UQUR2OEI3SXpNOTFZV1Mvbk1tdXhkaGZCSVVJK2pSa3AwZndWMDdGTDZxRUw2S3MxeFZ0TFhVaUR3d2c\"}"
+     *                 localhost:8080/show
+     * @param response The response, into which the associated input data retrieved from storage is written
+     * @throws IOException              Error reading the encryption keys, reading the JSON data or writing the response
      * @throws NoSuchPaddingException   Exception in the data in the encryption and/or decryption key files
      * @throws NoSuchAlgorithmException No such algorithm provided for encryption and/or decryption
      * @throws NoSuchProviderException  Invalid encryption/decryption with regards to the encryption and/or decryption key files
+     * @throws ServiceNotReadyException The encryption keys are not in place yet
      */
     @RequestMapping("/show")
-    public String showCoin(@RequestBody String data)
+    public void showCoin(HttpServletRequest request, HttpServletResponse response)
             throws
-            IOException, NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException
+            IOException, NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException,
+            ServiceNotReadyException
     {
-        ObjectMapper mapper = new ObjectMapper();
+        requireReady();
 
-        HashMap<String, String> map = mapper.readValue(data, new TypeReference<Map<String, String>>()
-        {
-        });
+        HashMap<String, String> map = Json.readStrings(request.getInputStream());
+
+        String coinId = map.get("coinId");
+
+        // The coin was serialized when it was minted
+        respondRaw(response, display.showCoin(coinId));
+    }
+
+    /**
+     * Displays how well the cache of decrypted coins is doing
+     *
+     * @param pretty   Present to indent the response for people to read
+     * @param response The response, into which the hits, misses, evictions and invalidations of the
+     *                 cache, and its size, are written
+     * @throws IOException Error writing the response
+     */
+    @RequestMapping("/show/stats")
+    public void coinCacheStats(@RequestParam(value = "pretty", required = false) String pretty,
+                               HttpServletResponse response) throws IOException
+    {
+        respond(response, display.cacheStats(), pretty);
+    }
+
+    /**
+     * Revoke a coin, so that it can no longer be displayed or minted again
+     *
+     * @param request  The request, whose body is the JSON data containing the coin id
+     *                 <p>
+     *                 Example usage:
+     *                 curl -X POST -H "Content-type: application/json" -d "{\"coinId\":\"cGNDWFlETzFa...\"}" localhost:8080/revoke
+     * @param pretty   Present to indent the response for people to read
+     * @param response The response, into which the coin id and whether a coin with that id was found
+     *                 and revoked are written
+     * @throws IOException Error reading the JSON data or writing the response
+     */
+    @RequestMapping("/revoke")
+    public void revokeCoin(HttpServletRequest request,
+                           @RequestParam(value = "pretty", required = false) String pretty,
+                           HttpServletResponse response) throws IOException
+    {
+        HashMap<String, String> map = Json.readStrings(request.getInputStream());
 
         String coinId = map.get("coinId");
 
-        CoinDisplay display = new CoinDisplay();
+        LinkedHashMap<String, Object> result = new LinkedHashMap<>();
+        result.put("coinId", coinId);
+        result.put("revoked", coinId != null && !coinId.isEmpty() && CoinLedger.revoke(coinId));
 
-        return display.showCoin(coinId);
+        respond(response, result, pretty);
+    }
+
+    /**
+     * List the coins of a country, one JSON object per line, without decrypting them
+     * <p>
+     * Each line carries the "coinId", "country", "validFrom" and "valid" of a coin. The last line
+     * carries "next", the cursor to pass as "after" to read the following page, or null if there
+     * are no more coins.
+     * <p>
+     * How to test using curl:
+     * curl "localhost:8080/list/country?country=Kenya&limit=500"
+     *
+     * @param country  The country eg "Kenya"
+     * @param after    The cursor of the page to read, none for the first page
+     * @param limit    The most coins to list, up to {@value CoinLedger#MAX_PAGE_SIZE}
+     * @param response The response, into which the coins are streamed
+     * @throws IOException Error writing the coins
+     */
+    @RequestMapping("/list/country")
+    public void listByCountry(@RequestParam("country") String country,
+                              @RequestParam(value = "after", required = false) String after,
+                              @RequestParam(value = "limit", defaultValue = "0") int limit,
+                              HttpServletResponse response) throws IOException
+    {
+        streamListing(response, coins -> CoinLedger.listByCountry(country, after, limit, coins));
+    }
+
+    /**
+     * List the coins minted between two days, one JSON object per line, without decrypting them
+     * <p>
+     * The lines are the same as those of /list/country.
+     * <p>
+     * How to test using curl:
+     * curl "localhost:8080/list/validFrom?from=2018-01-01&to=2018-12-31"
+     *
+     * @param from     The first day, as yyyy-MM-dd
+     * @param to       The last day, as yyyy-MM-dd
+     * @param after    The cursor of the page to read, none for the first page
+     * @param limit    The most coins to list, up to {@value CoinLedger#MAX_PAGE_SIZE}
+     * @param response The response, into which the coins are streamed
+     * @throws IOException Error writing the coins
+     */
+    @RequestMapping("/list/validFrom")
+    public void listByValidFrom(@RequestParam("from") String from,
+                                @RequestParam("to") String to,
+                                @RequestParam(value = "after", required = false) String after,
+                                @RequestParam(value = "limit", defaultValue = "0") int limit,
+                                HttpServletResponse response) throws IOException
+    {
+        streamListing(response, coins -> CoinLedger.listByValidFrom(from, to, after, limit, coins));
+    }
+
+    /**
+     * List the revoked coins, one JSON object per line
+     * <p>
+     * The lines are the same as those of /list/country.
+     * <p>
+     * How to test using curl:
+     * curl "localhost:8080/list/revoked"
+     *
+     * @param after    The cursor of the page to read, none for the first page
+     * @param limit    The most coins to list, up to {@value CoinLedger#MAX_PAGE_SIZE}
+     * @param response The response, into which the coins are streamed
+     * @throws IOException Error writing the coins
+     */
+    @RequestMapping("/list/revoked")
+    public void listRevoked(@RequestParam(value = "after", required = false) String after,
+                            @RequestParam(value = "limit", defaultValue = "0") int limit,
+                            HttpServletResponse response) throws IOException
+    {
+        streamListing(response, coins -> CoinLedger.listRevoked(after, limit, coins));
+    }
+
+    /**
+     * Reads a page of coins from the vault
+     */
+    private interface Listing
+    {
+        String list(Consumer<CoinRecord> coins) throws IOException;
+    }
+
+    /**
+     * Streams a page of coins as they are read, followed by the cursor of the next page
+     *
+     * @param response The response, into which the coins are streamed
+     * @param listing  Reads the page
+     * @throws IOException Error writing the coins
+     */
+    private static void streamListing(HttpServletResponse response, Listing listing) throws IOException
+    {
+        response.setContentType(ResultLines.CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+
+        ResultLines lines = new ResultLines(response.getOutputStream());
+
+        try
+        {
+            String next = listing.list(coin -> lines.write(line ->
+            {
+                line.writeStringField("coinId", coin.getCoinId());
+                line.writeStringField("country", coin.getCountry());
+                line.writeStringField("validFrom", coin.getValidFrom());
+                line.writeBooleanField("valid", coin.isValid());
+            }));
+
+            lines.write(line -> line.writeStringField("next", next));
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Nothing has been read yet, so nothing has been written either
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+            lines.write(ResultLines.error(ex.getMessage()));
+        }
+        catch (IOException ex)
+        {
+            LOGGER.log(Level.SEVERE, "Could not list the coins", ex);
+
+            lines.write(ResultLines.error("The coins could not be listed"));
+        }
+
+        lines.flush();
+    }
+
+    /**
+     * Streams a value into the response as JSON
+     *
+     * @param response The response
+     * @param value    The value
+     * @param pretty   Present to indent the JSON for people to read
+     * @throws IOException Error writing the response
+     */
+    private static void respond(HttpServletResponse response, Object value, String pretty) throws IOException
+    {
+        response.setContentType(JSON_CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+
+        Json.write(response.getOutputStream(), value, pretty != null);
+    }
+
+    /**
+     * Writes JSON that has already been serialized into the response
+     *
+     * @param response The response
+     * @param json     The JSON, or null to leave the response empty
+     * @throws IOException Error writing the response
+     */
+    private static void respondRaw(HttpServletResponse response, String json) throws IOException
+    {
+        response.setContentType(JSON_CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+
+        if (json != null)
+        {
+            response.getOutputStream().write(json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Explains why coins cannot be minted for a country
+     *
+     * @param countryName The name of the country eg "Kenya"
+     * @return The error message, together with the country if one was given, or null if the country is supported
+     */
+    static HashMap<String, String> countryError(String countryName)
+    {
+        if (countryName == null) // No country specified
+        {
+            HashMap<String, String> missingCountry = new HashMap<>();
+
+            missingCountry.put(
+                    "errorMessage",
+                    String.format(
+                            "No country has been specified. Supported countries are %s",
+                            CurrencyRegistry.countries()
+                    )
+            );
+
+            return missingCountry;
+        }
+
+        if (!CurrencyRegistry.isSupported(countryName)) // Country is not supported
+        {
+            HashMap<String, String> unsupportedCountry = new HashMap<>();
+
+            unsupportedCountry.put("country", countryName);
+            unsupportedCountry.put(
+                    "errorMessage",
+                    String.format(
+                            "%s is unsupported. Supported countries are %s",
+                            countryName, CurrencyRegistry.countries()
+                    )
+            );
+
+            return unsupportedCountry;
+        }
+
+        return null;
+    }
+
+    /**
+     * Turns requests away until the encryption keys are in place
+     *
+     * @throws ServiceNotReadyException The encryption keys are not in place yet
+     */
+    private static void requireReady() throws ServiceNotReadyException
+    {
+        if (!KeyRing.isReady())
+        {
+            throw new ServiceNotReadyException("The encryption keys are still being provisioned");
+        }
     }
 }
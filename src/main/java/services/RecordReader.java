@@ -0,0 +1,156 @@
+package services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import core.Json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+/**
+ * Reads the records of a batch upload one at a time with the streaming parser.
+ * <p>
+ * The upload is either newline-delimited JSON, one object per line, or a single JSON
+ * array of objects. Each record is a flat object of string values, like the input of /save.
+ */
+final class RecordReader implements Closeable
+{
+    /**
+     * A record of the upload
+     */
+    static final class Record
+    {
+        // The position of the record in the upload, counting from 1
+        final int number;
+
+        // The values by field name, or null if the record could not be read
+        final HashMap<String, String> values;
+
+        // Why the record could not be read, or null
+        final String errorMessage;
+
+        private Record(int number, HashMap<String, String> values, String errorMessage)
+        {
+            this.number = number;
+            this.values = values;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    private final JsonParser parser;
+
+    private int count;
+    private boolean started;
+    private boolean inArray;
+    private boolean finished;
+
+    /**
+     * Starts reading an upload
+     *
+     * @param input The upload
+     * @throws IOException Error opening the upload
+     */
+    RecordReader(InputStream input) throws IOException
+    {
+        this.parser = Json.factory().createParser(input);
+    }
+
+    /**
+     * Reads the next record. Malformed JSON ends the upload, since there is no telling
+     * where the next record would start
+     *
+     * @return The record, which may carry an error instead of values, or null at the end of the upload
+     * @throws IOException Error reading the upload
+     */
+    Record next() throws IOException
+    {
+        if (finished)
+        {
+            return null;
+        }
+
+        int number = count + 1;
+
+        try
+        {
+            JsonToken token = parser.nextToken();
+
+            if (!started)
+            {
+                started = true;
+
+                if (token == JsonToken.START_ARRAY)
+                {
+                    inArray = true;
+                    token = parser.nextToken();
+                }
+            }
+
+            if (token == null || (inArray && token == JsonToken.END_ARRAY))
+            {
+                finished = true;
+                return null;
+            }
+
+            count = number;
+
+            if (token != JsonToken.START_OBJECT)
+            {
+                parser.skipChildren();
+                return new Record(number, null, "Each record must be a JSON object");
+            }
+
+            HashMap<String, String> values = readValues();
+
+            return values == null
+                    ? new Record(number, null, "The values of a record must be strings")
+                    : new Record(number, values, null);
+        }
+        catch (JsonProcessingException ex)
+        {
+            finished = true;
+            count = number;
+
+            return new Record(number, null, String.format("Malformed JSON: %s", ex.getOriginalMessage()));
+        }
+    }
+
+    /**
+     * Reads the fields of a record, which the parser has just entered
+     *
+     * @return The values by field name, or null if a value is an object or an array
+     * @throws IOException Error reading the record
+     */
+    private HashMap<String, String> readValues() throws IOException
+    {
+        HashMap<String, String> values = new HashMap<>();
+        boolean flat = true;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (value.isStructStart())
+            {
+                parser.skipChildren();
+                flat = false;
+            }
+            else
+            {
+                values.put(name, value == JsonToken.VALUE_NULL ? null : parser.getText());
+            }
+        }
+
+        return flat ? values : null;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        parser.close();
+    }
+}
@@ -0,0 +1,151 @@
+package services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import core.Json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the results of a batch upload, one JSON object per line.
+ * <p>
+ * Lines may be written from several threads. They are pushed to the client every
+ * {@value #FLUSH_EVERY} lines, and when {@link #flush()} is called at the end.
+ */
+final class ResultLines
+{
+    static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private static final int FLUSH_EVERY = 64;
+
+    /**
+     * Writes the fields of a line
+     */
+    interface Line
+    {
+        void write(JsonGenerator line) throws IOException;
+    }
+
+    // Guarded by itself
+    private final JsonGenerator output;
+
+    private int unflushed;
+
+    // The first error writing to the client. Once set, nothing more is written
+    private volatile IOException failure;
+
+    /**
+     * Prepares to write the results
+     *
+     * @param output Where to write the results
+     * @throws IOException Error opening the output
+     */
+    ResultLines(OutputStream output) throws IOException
+    {
+        this.output = Json.factory().createGenerator(output);
+        this.output.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        // Each line ends with a newline instead of being separated from the next by a space
+        this.output.setRootValueSeparator(null);
+    }
+
+    /**
+     * A line that only carries an error message
+     *
+     * @param message The error message
+     * @return The line
+     */
+    static Line error(String message)
+    {
+        return line -> line.writeStringField("errorMessage", message);
+    }
+
+    /**
+     * Writes the result of a record
+     *
+     * @param record The number of the record
+     * @param result The fields of the result
+     */
+    void write(int record, Line result)
+    {
+        write(line ->
+        {
+            line.writeNumberField("record", record);
+            result.write(line);
+        });
+    }
+
+    /**
+     * Writes a line
+     *
+     * @param fields The fields of the line
+     */
+    void write(Line fields)
+    {
+        synchronized (output)
+        {
+            if (failure != null)
+            {
+                return;
+            }
+
+            try
+            {
+                output.writeStartObject();
+                fields.write(output);
+                output.writeEndObject();
+                output.writeRaw('\n');
+
+                if (++unflushed >= FLUSH_EVERY)
+                {
+                    output.flush();
+                    unflushed = 0;
+                }
+            }
+            catch (IOException ex)
+            {
+                // Most likely the client has gone away
+                failure = ex;
+            }
+        }
+    }
+
+    /**
+     * Pushes the lines written so far to the client
+     *
+     * @throws IOException The lines could not be written, now or earlier
+     */
+    void flush() throws IOException
+    {
+        synchronized (output)
+        {
+            if (failure == null)
+            {
+                try
+                {
+                    output.flush();
+                    unflushed = 0;
+                }
+                catch (IOException ex)
+                {
+                    failure = ex;
+                }
+            }
+        }
+
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Checks whether writing has failed, in which case the upload should be abandoned
+     *
+     * @return True if a line could not be written
+     */
+    boolean failed()
+    {
+        return failure != null;
+    }
+}
@@ -0,0 +1,54 @@
+package services;
+
+import core.Vault;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Opens the vault with the application's settings before any request is served, and closes it
+ * on shutdown once the queued coins have been written.
+ * <p>
+ * The settings are read from application.properties, the command line ({@code --vault.backend=log})
+ * or system properties. See {@link Vault} for what they are.
+ */
+@Configuration
+public class VaultConfiguration
+{
+    private final Environment environment;
+
+    /**
+     * Instantiate the configuration
+     *
+     * @param environment The application's settings
+     */
+    public VaultConfiguration(Environment environment)
+    {
+        this.environment = environment;
+    }
+
+    /**
+     * Opens the vault
+     *
+     * @throws SQLException Error creating the tables or opening the connections
+     * @throws IOException  Error opening the log
+     */
+    @PostConstruct
+    public void openVault() throws SQLException, IOException
+    {
+        Vault.open(environment::getProperty);
+    }
+
+    /**
+     * Writes out any coins still waiting for a group commit and closes the vault
+     */
+    @PreDestroy
+    public void closeVault()
+    {
+        Vault.close();
+    }
+}
@@ -1,12 +1,13 @@
 package test;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
 import core.CoinDisplay;
+import core.Json;
+import core.LockSmith;
 import core.Money;
 import currency.Kenya;
 
-import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.HashMap;
 
@@ -14,6 +15,8 @@ public class CreateCoin
 {
     public static void main(String[] args) throws Exception
     {
+        LockSmith.provision();
+
         CoinDisplay display = new CoinDisplay();
 //        System.out.println(display.showCoin("VXhvTmd3WTByUmlLU1J0ZkxLQmFKY28xa0lCVEtPUHg2Vm9ma1h0eHVFVzFoOStaRVZUbThqNGlGQ3NjTGRvdG9JckhnRzZQTm45aGd0V0kvMlQ3Y3c"));
 
@@ -41,10 +44,12 @@ public class CreateCoin
 
         String coinID = "";
 
-        Gson gson = new Gson();
+        Collection<HashMap> savedValues;
 
-        Type collectionType = new TypeToken<Collection<HashMap>>(){}.getType();
-        Collection<HashMap> savedValues = gson.fromJson(coin, collectionType);
+        try (JsonParser parser = Json.factory().createParser(coin))
+        {
+            savedValues = parser.readValueAs(new TypeReference<Collection<HashMap>>(){});
+        }
 
         for(HashMap value : savedValues)
         {
@@ -0,0 +1,81 @@
+package test;
+
+import core.CurrencyRegistry;
+import core.FieldResult;
+import core.Money;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Uganda is declared in currency/uganda.json rather than written as a class
+ */
+class UgandaTest
+{
+    private static HashMap<String, String> validValues()
+    {
+        HashMap<String, String> values = new HashMap<>();
+        values.put("accountNumber", "3100458812");
+        values.put("taxIdentificationNumber", "1000234567");
+        values.put("accountHolderName", "Ana Nakato");
+        values.put("BIC", "SBICUGKX");
+
+        return values;
+    }
+
+    private static FieldResult resultOf(List<FieldResult> results, String fieldName)
+    {
+        return results.stream()
+                .filter(result -> result.getField().getName().equals(fieldName))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No result for " + fieldName));
+    }
+
+    @Test
+    void declared() throws Exception
+    {
+        assertTrue(CurrencyRegistry.isSupported("Uganda"));
+
+        Money uganda = CurrencyRegistry.create("Uganda", validValues());
+
+        assertEquals("Uganda", uganda.getCountryName());
+        assertEquals("UGX", uganda.getCurrencyCode());
+        assertEquals(3, uganda.essentialFields().size());
+    }
+
+    @Test
+    void mintValid() throws Exception
+    {
+        Money uganda = CurrencyRegistry.create("Uganda", validValues());
+
+        List<FieldResult> results = uganda.validate();
+
+        assertTrue(uganda.isValid(results), results::toString);
+        assertEquals("3100", resultOf(results, "accountNumber").getDerived("accountNumberCode"));
+        assertEquals("Will be verified by the tax authorities",
+                resultOf(results, "taxIdentificationNumber").getWarningMessage());
+    }
+
+    @Test
+    void mintInvalid() throws Exception
+    {
+        HashMap<String, String> values = validValues();
+        values.put("accountNumber", "1234567890");
+        values.put("taxIdentificationNumber", "10002345");
+        values.put("accountHolderName", "Al");
+        values.put("BIC", "sbic");
+
+        Money uganda = CurrencyRegistry.create("Uganda", values);
+
+        List<FieldResult> results = uganda.validate();
+
+        assertFalse(uganda.isValid(results));
+        assertEquals("Trivial value detected", resultOf(results, "accountNumber").getErrorMessage());
+        assertEquals("Enter the 10 digit TIN", resultOf(results, "taxIdentificationNumber").getErrorMessage());
+        assertEquals("Must be at least 3 characters long", resultOf(results, "accountHolderName").getErrorMessage());
+        assertEquals("Enter a valid BIC", resultOf(results, "BIC").getErrorMessage());
+    }
+}
@@ -0,0 +1,182 @@
+package core;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stored coins that are truncated or corrupt must be rejected with a GeneralSecurityException,
+ * which the display handles, rather than with a RuntimeException that fails the request.
+ * <p>
+ * The keys are real, so that garbage gets as far as unwrapping, decrypting and verifying. Like the
+ * service, the test keeps them in keys/ under the working directory, which the build points at
+ * target/test-run
+ */
+class CorruptCoinTest
+{
+    private static final int GARBAGE_ROUNDS = 2000;
+
+    // Quick to generate, and the keys are thrown away
+    private static final int KEY_SIZE = 1024;
+
+    @BeforeAll
+    static void provisionKeys() throws Exception
+    {
+        LockSmith.provision(LockSmith.CIPHER_ALGORITHM, KEY_SIZE, false);
+        KeyRing.reload();
+    }
+
+    @Test
+    void truncatedEnvelope() throws Exception
+    {
+        Envelope envelope = new Envelope(Enigma.getInstance());
+
+        // A version byte, a 256 byte wrapped key, a 12 byte IV and a 16 byte tag
+        ByteBuffer whole = ByteBuffer.allocate(1 + 2 + 256 + 12 + 16);
+        whole.put(Envelope.VERSION).putShort((short) 256);
+
+        for (int length = 0; length < whole.capacity(); length++)
+        {
+            byte[] truncated = Arrays.copyOf(whole.array(), length);
+
+            GeneralSecurityException ex = assertThrows(GeneralSecurityException.class,
+                    () -> envelope.openBytes(truncated));
+
+            if (length > 0)
+            {
+                assertEquals("Truncated envelope", ex.getMessage());
+            }
+        }
+    }
+
+    @Test
+    void truncatedSignedCoin() throws Exception
+    {
+        Notary notary = new Notary(new Envelope(Enigma.getInstance()));
+
+        byte[] header = {Notary.VERSION, 0, 0, 0, 0, 100};
+
+        for (int length = 0; length <= header.length; length++)
+        {
+            byte[] truncated = Arrays.copyOf(header, length);
+
+            assertThrows(GeneralSecurityException.class, () -> notary.open("coin", truncated));
+        }
+    }
+
+    @Test
+    void garbage() throws Exception
+    {
+        Envelope envelope = new Envelope(Enigma.getInstance());
+        Notary notary = new Notary(envelope);
+
+        Random random = new Random(5);
+
+        for (int i = 0; i < GARBAGE_ROUNDS; i++)
+        {
+            byte[] garbage = new byte[random.nextInt(400)];
+            random.nextBytes(garbage);
+
+            if (garbage.length > 0)
+            {
+                garbage[0] = random.nextBoolean() ? Envelope.VERSION : Notary.VERSION;
+            }
+
+            assertRejected(() -> envelope.openBytes(garbage));
+            assertRejected(() -> notary.open("coin", garbage));
+        }
+    }
+
+    @Test
+    void garbageWithValidHeaders() throws Exception
+    {
+        Envelope envelope = new Envelope(Enigma.getInstance());
+        Notary notary = new Notary(envelope);
+
+        Random random = new Random(7);
+
+        for (int i = 0; i < GARBAGE_ROUNDS; i++)
+        {
+            // A wrapped key of the size of the keys, so that the garbage gets as far as unwrapping it
+            int wrappedLength = random.nextBoolean() ? KEY_SIZE / Byte.SIZE : random.nextInt(KEY_SIZE / Byte.SIZE);
+            ByteBuffer sealed = ByteBuffer.allocate(1 + 2 + wrappedLength + 12 + 16 + random.nextInt(100));
+            random.nextBytes(sealed.array());
+            sealed.put(Envelope.VERSION).putShort((short) wrappedLength);
+
+            assertRejected(() -> envelope.openBytes(sealed.array()));
+
+            // A payload that fits, so that the garbage gets as far as verifying the signature
+            ByteBuffer signed = ByteBuffer.allocate(6 + random.nextInt(200));
+            random.nextBytes(signed.array());
+            signed.put(Notary.VERSION)
+                    .put(random.nextBoolean() ? Notary.SEALED : Notary.PLAIN)
+                    .putInt(random.nextInt(signed.capacity() - 5));
+
+            assertRejected(() -> notary.open("coin", signed.array()));
+        }
+    }
+
+    @Test
+    void tampered() throws Exception
+    {
+        Envelope envelope = new Envelope(Enigma.getInstance());
+        Notary notary = new Notary(envelope);
+
+        byte[] coin = "{\"coinId\":\"coin\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] sealed = envelope.sealBytes(coin);
+        byte[] signed = notary.sign(coin, true);
+
+        assertArrayEquals(coin, envelope.openBytes(sealed));
+        assertArrayEquals(coin, notary.open("coin", signed));
+
+        for (int i = 0; i < sealed.length; i++)
+        {
+            byte[] flipped = sealed.clone();
+            flipped[i] ^= 1;
+
+            assertRejected(() -> envelope.openBytes(flipped));
+        }
+
+        for (int i = 0; i < signed.length; i++)
+        {
+            byte[] flipped = signed.clone();
+            flipped[i] ^= 1;
+
+            assertRejected(() -> notary.open("coin", flipped));
+        }
+    }
+
+    private interface Opening
+    {
+        void open() throws Exception;
+    }
+
+    /**
+     * Garbage must be rejected as a forgery, whichever step finds it out
+     *
+     * @param opening The attempt to open some bytes
+     */
+    private static void assertRejected(Opening opening)
+    {
+        try
+        {
+            opening.open();
+            fail("Garbage was accepted");
+        }
+        catch (GeneralSecurityException expected)
+        {
+            // Rejected as it should be
+        }
+        catch (Exception ex)
+        {
+            fail("Garbage was rejected with " + ex);
+        }
+    }
+}
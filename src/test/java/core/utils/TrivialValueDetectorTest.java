@@ -0,0 +1,56 @@
+package core.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrivialValueDetectorTest
+{
+    private static final TrivialValueDetector DETECTOR = TrivialValueDetector.standard();
+
+    private static void assertTrivial(String... values)
+    {
+        for (String value : values)
+        {
+            assertTrue(DETECTOR.isTrivial(value), () -> value + " should be trivial");
+        }
+    }
+
+    private static void assertNotTrivial(String... values)
+    {
+        for (String value : values)
+        {
+            assertFalse(DETECTOR.isTrivial(value), () -> value + " should not be trivial");
+        }
+    }
+
+    @Test
+    void repeats()
+    {
+        assertTrivial("", "   ", "0000", "aaaaaaa", "1212", "121212", "123123", "abcabcabc", "nanana");
+
+        // Names repeat a unit of letters twice
+        assertNotTrivial("Nana", "Lala", "Mimi", "Coco", "Dede", "Bebe", "Ayaya");
+    }
+
+    @Test
+    void sequences()
+    {
+        assertTrivial("123", "321", "2468", "7890", "0987", "abcd", "fedc", "aceg", "yzab");
+
+        assertNotTrivial("Ana", "Bob", "Eve", "Abe", "147", "369");
+    }
+
+    @Test
+    void keyboardWalks()
+    {
+        assertTrivial("qwer", "qwerty", "lkjh");
+    }
+
+    @Test
+    void realValues()
+    {
+        assertNotTrivial("Arthur Buliva", "Herengracht 597, 1069RE, Amsterdam", "A017723456X", "7234567891",
+                "3100458812", "1000234567");
+    }
+}